@@ -0,0 +1,393 @@
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+/**
+ * Parses a batch of CAL sources across a thread pool.
+ *
+ * Every source gets its own CALParser, token manager and char stream, so
+ * the tasks share no state and results come back in input order.
+ *
+ * main() is the command line for parsing many files in one JVM, which
+ * CALParser.main() hands over to when given more than one file, a
+ * directory or a glob pattern.
+ */
+public class CALBatch {
+
+    /** Outcome of parsing one source. */
+    public static final class Result {
+        /** File name, or the label given for an in-memory source. */
+        public final String name;
+        /** Why the parse failed, or null if it succeeded. */
+        public final Throwable error;
+        /** Every syntax error, where the parse reported them all, or else none. */
+        public final List<ParseException> errors;
+        /** Tokens and bytes read, where counted. */
+        public final long tokens, bytes;
+
+        Result(String name, Throwable error) {
+            this(name, error, Collections.<ParseException>emptyList(), 0, 0);
+        }
+
+        Result(String name, Throwable error, List<ParseException> errors, long tokens, long bytes) {
+            this.name = name;
+            this.error = error;
+            this.errors = errors;
+            this.tokens = tokens;
+            this.bytes = bytes;
+        }
+
+        /** @return true if the source parsed successfully */
+        public boolean ok() {
+            return error == null;
+        }
+    }
+
+    /** Parse one stream on the calling thread. */
+    public static Result parse(String name, java.io.InputStream in) {
+        try {
+            new CALParser(in).program();
+            return new Result(name, null);
+        } catch (ParseException | TokenMgrError e) {
+            return new Result(name, e);
+        } catch (Error e) {
+            // JavaCharStream throws a plain Error for a cut-short unicode escape
+            if (e instanceof VirtualMachineError)
+                throw e;
+            return new Result(name, e);
+        }
+    }
+
+    /** Parse the named files using the given number of threads. */
+    public static List<Result> parseFiles(List<String> paths, int threads) {
+        return run(paths.size(), i -> {
+            String path = paths.get(i);
+            try (java.io.InputStream in = new java.io.FileInputStream(path)) {
+                return parse(path, in);
+            } catch (java.io.IOException e) {
+                return new Result(path, e);
+            }
+        }, threads);
+    }
+
+    /**
+     * Parse the named files using the given number of threads, taking the
+     * outcome for any file whose text has been parsed before from cache.
+     */
+    public static List<Result> parseFiles(List<String> paths, int threads, CALParseCache cache) {
+        return run(paths.size(), i -> {
+            String path = paths.get(i);
+            try {
+                cache.parse(java.nio.file.Files.readAllBytes(java.nio.file.Paths.get(path)));
+                return new Result(path, null);
+            } catch (ParseException | TokenMgrError | java.io.IOException e) {
+                return new Result(path, e);
+            }
+        }, threads);
+    }
+
+    /** Parse in-memory sources using the given number of threads. */
+    public static List<Result> parseSources(List<String> names, List<byte[]> sources, int threads) {
+        return run(sources.size(), i ->
+            parse(names.get(i), new java.io.ByteArrayInputStream(sources.get(i))), threads);
+    }
+
+    /**
+     * Parse the named files on a work-stealing pool of the given number of
+     * threads, reporting every syntax error in each. Each worker keeps one
+     * TokenBuffer for all the files it parses.
+     */
+    public static List<Result> parseAll(List<String> paths, int threads) {
+        ThreadLocal<TokenBuffer> buffers = ThreadLocal.withInitial(TokenBuffer::new);
+        Result[] results = new Result[paths.size()];
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            pool.invoke(new Slice(0, results.length, i -> parseAll(paths.get(i), buffers.get()), results));
+        } finally {
+            pool.shutdown();
+        }
+        List<Result> list = new ArrayList<Result>(results.length);
+        Collections.addAll(list, results);
+        return list;
+    }
+
+    /**
+     * Parse one file in two phases, as CALIndexParser.parse() does, except
+     * that a file that fails is parsed again with error recovery.
+     */
+    static Result parseAll(String path, TokenBuffer tokens) {
+        byte[] bytes;
+        try {
+            if (path.equals("-"))
+                return parseAll(STDIN, System.in.readAllBytes(), tokens);
+            bytes = Files.readAllBytes(Paths.get(path));
+        } catch (java.io.IOException | java.nio.file.InvalidPathException e) {
+            return new Result(path, e);
+        }
+        return parseAll(path, bytes, tokens);
+    }
+
+    /** The name standard input is reported as. */
+    static final String STDIN = "<stdin>";
+
+    /** As parseAll(path, tokens), for a source already in memory. */
+    static Result parseAll(String path, byte[] bytes, TokenBuffer tokens) {
+        MappedCharStream stream;
+        try {
+            stream = MappedCharStream.decode(bytes);
+        } catch (TokenMgrError e) {
+            ParseException bad = new ParseException(e.getMessage());
+            return new Result(path, bad, Collections.singletonList(bad), 0, bytes.length);
+        }
+        tokens.fill(stream);
+        int count = tokens.size() - 1;
+        try {
+            new CALIndexParser(tokens).program();
+            return new Result(path, null, Collections.<ParseException>emptyList(), count, bytes.length);
+        } catch (ParseException fast) {
+            stream.seek(0);
+            List<ParseException> errors = new CALParser(new CALTableTokenManager(stream)).programWithRecovery();
+            // Should recovery ever find nothing, the file still failed
+            if (errors.isEmpty())
+                errors = Collections.singletonList(fast);
+            return new Result(path, errors.get(0), errors, count, bytes.length);
+        }
+    }
+
+    /** Fills in the results for a range of tasks, splitting it for idle workers to steal. */
+    private static final class Slice extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+        private final IntFunction<Result> task;
+        private final Result[] results;
+
+        Slice(int from, int to, IntFunction<Result> task, Result[] results) {
+            this.from = from;
+            this.to = to;
+            this.task = task;
+            this.results = results;
+        }
+
+        protected void compute() {
+            if (to - from == 1) {
+                results[from] = task.apply(from);
+            } else if (to > from) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Slice(from, mid, task, results), new Slice(mid, to, task, results));
+            }
+        }
+    }
+
+    /** Exit status when every file parsed. */
+    public static final int EXIT_OK = 0;
+    /** Exit status when some file has a syntax error, but every file could be read. */
+    public static final int EXIT_SYNTAX = 1;
+    /** Exit status when some file could not be read, nothing matched, or the usage was wrong. */
+    public static final int EXIT_IO = 2;
+
+    /**
+     * Parse every file named on the command line. Arguments are files,
+     * directories, searched for *.cal files at any depth, glob patterns
+     * such as src/**.cal, which are matched against paths as written, and
+     * "-" for standard input, which is reported as &lt;stdin&gt;.
+     * Options:
+     * <pre>
+     *   -j N   use N threads, by default one per processor
+     *   -q     print nothing for files that parse
+     * </pre>
+     * One line is printed per file, or per syntax error, in the order the
+     * files were named, each directory or pattern's files sorted by path.
+     * A summary follows on standard error as a single JSON object. The
+     * exit status is EXIT_OK, EXIT_SYNTAX or EXIT_IO.
+     */
+    public static void main(String[] args) {
+        System.exit(command(args, System.out, System.err));
+    }
+
+    /** As main(), returning the exit status. */
+    static int command(String[] args, PrintStream out, PrintStream err) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean quiet = false;
+        List<String> patterns = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-j") && i + 1 < args.length && args[i + 1].matches("[1-9][0-9]{0,3}")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-q")) {
+                quiet = true;
+            } else if (args[i].startsWith("-") && !args[i].equals("-")) {
+                usage(err);
+                return EXIT_IO;
+            } else {
+                patterns.add(args[i]);
+            }
+        }
+        if (patterns.isEmpty()) {
+            usage(err);
+            return EXIT_IO;
+        }
+
+        long start = System.nanoTime();
+        List<String> unmatched = new ArrayList<String>();
+        List<String> paths = expand(patterns, unmatched);
+        for (String pattern : unmatched)
+            out.println(pattern + ": No files found.");
+        List<Result> results = parseAll(paths, threads);
+        double secs = (System.nanoTime() - start) / 1e9;
+
+        int parsed = 0, failed = 0, unreadable = 0, errors = 0;
+        long tokens = 0, bytes = 0;
+        for (Result r : results) {
+            tokens += r.tokens;
+            bytes += r.bytes;
+            print(r, quiet, out);
+            if (r.ok()) {
+                parsed++;
+            } else if (r.errors.isEmpty()) {
+                unreadable++;
+            } else {
+                failed++;
+                errors += r.errors.size();
+            }
+        }
+        out.flush();
+        err.printf("{\"files\":%d,\"parsed\":%d,\"failed\":%d,\"unreadable\":%d,\"unmatched\":%d,"
+                   + "\"errors\":%d,\"tokens\":%d,\"bytes\":%d,\"threads\":%d,\"seconds\":%.3f,"
+                   + "\"filesPerSecond\":%.1f,\"tokensPerSecond\":%.1f}%n",
+                   results.size(), parsed, failed, unreadable, unmatched.size(), errors, tokens, bytes, threads, secs,
+                   results.size() / secs, tokens / secs);
+        if (unreadable > 0 || !unmatched.isEmpty() || results.isEmpty())
+            return EXIT_IO;
+        return failed > 0 ? EXIT_SYNTAX : EXIT_OK;
+    }
+
+    /** Print the line for r, or one line for each of its syntax errors. */
+    static void print(Result r, boolean quiet, PrintStream out) {
+        if (r.ok()) {
+            if (!quiet)
+                out.println(r.name + ": Parsed successfully.");
+        } else if (r.errors.isEmpty()) {
+            out.println(r.name + ": Cannot read file: " + r.error);
+        } else {
+            for (ParseException e : r.errors)
+                out.println(r.name + ": " + e.getMessage().replaceAll("\\s*\n\\s*", " ").trim());
+        }
+    }
+
+    /** @return the exit status for a run with the single result r */
+    static int status(Result r) {
+        return r.ok() ? EXIT_OK : r.errors.isEmpty() ? EXIT_IO : EXIT_SYNTAX;
+    }
+
+    private static void usage(PrintStream err) {
+        err.println("CAL Parser: Usage is one of:");
+        err.println("    java CALParser < inputfile");
+        err.println("OR");
+        err.println("    java CALParser inputfile");
+        err.println("OR");
+        err.println("    java CALParser [-j threads] [-q] file|directory|pattern ...");
+        err.println("OR");
+        err.println("    java CALParser --server [socket]");
+        err.println("OR");
+        err.println("    java CALParser --run inputfile");
+    }
+
+    /** @return true if arg names more than one file: a directory or a glob pattern */
+    static boolean isBatch(String arg) {
+        return isPattern(arg) || Files.isDirectory(Paths.get(arg));
+    }
+
+    /** @return true if arg has a wildcard and is not simply the name of a file */
+    private static boolean isPattern(String arg) {
+        if (arg.indexOf('*') < 0 && arg.indexOf('?') < 0 && arg.indexOf('[') < 0 && arg.indexOf('{') < 0)
+            return false;
+        try {
+            return !Files.isRegularFile(Paths.get(arg));
+        } catch (java.nio.file.InvalidPathException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @return the files named by args, without repeats, each directory's
+     *         and pattern's sorted by path
+     * @param unmatched receives the directories and patterns with no files
+     */
+    static List<String> expand(List<String> args, List<String> unmatched) {
+        Set<String> files = new LinkedHashSet<String>();
+        for (String arg : args) {
+            List<String> found = new ArrayList<String>();
+            try {
+                if (isPattern(arg)) {
+                    // Walk from the last directory before the first wildcard
+                    int wild = arg.length();
+                    for (char c : new char[] { '*', '?', '[', '{' })
+                        if (arg.indexOf(c) >= 0)
+                            wild = Math.min(wild, arg.indexOf(c));
+                    String base = arg.substring(0, arg.lastIndexOf('/', wild) + 1);
+                    PathMatcher matcher = Paths.get("").getFileSystem().getPathMatcher("glob:" + arg);
+                    try (Stream<Path> walk = Files.walk(Paths.get(base))) {
+                        walk.filter(p -> matcher.matches(p) && Files.isRegularFile(p))
+                            .forEach(p -> found.add(p.toString()));
+                    }
+                } else if (Files.isDirectory(Paths.get(arg))) {
+                    try (Stream<Path> walk = Files.walk(Paths.get(arg))) {
+                        walk.filter(p -> p.toString().endsWith(".cal") && Files.isRegularFile(p))
+                            .forEach(p -> found.add(p.toString()));
+                    }
+                } else {
+                    found.add(arg);
+                }
+            } catch (java.io.IOException | java.io.UncheckedIOException | java.nio.file.InvalidPathException e) {
+                // Unreadable base directory: nothing matches
+            }
+            if (found.isEmpty())
+                unmatched.add(arg);
+            Collections.sort(found);
+            files.addAll(found);
+        }
+        return new ArrayList<String>(files);
+    }
+
+    static List<Result> run(int count, IntFunction<Result> task, int threads) {
+        List<Result> results = new ArrayList<Result>(count);
+        if (threads <= 1) {
+            for (int i = 0; i < count; i++)
+                results.add(task.apply(i));
+            return results;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Result>> pending = new ArrayList<Future<Result>>(count);
+            for (int i = 0; i < count; i++) {
+                final int index = i;
+                pending.add(pool.submit(() -> task.apply(index)));
+            }
+            for (Future<Result> f : pending)
+                results.add(f.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (java.util.concurrent.ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return results;
+    }
+}
@@ -0,0 +1,1371 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Throughput benchmarks for the CAL front end, run on generated programs.
+ *
+ * Usage: java CALBench mode [args]
+ */
+public class CALBench {
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "";
+        switch (mode) {
+        case "threads":
+            threads(intArg(args, 1, 2000), intArg(args, 2, Runtime.getRuntime().availableProcessors()));
+            break;
+        case "stream":
+            stream(args.length > 1 ? java.util.Arrays.copyOfRange(args, 1, args.length)
+                                   : new String[] { "1", "100", "1024" });
+            break;
+        case "lexer":
+            lexer(intArg(args, 1, 20));
+            break;
+        case "tokens":
+            tokens(intArg(args, 1, 20));
+            break;
+        case "conditions":
+            conditions(intArg(args, 1, 20), intArg(args, 2, 6));
+            break;
+        case "twophase":
+            twoPhase(intArg(args, 1, 20));
+            break;
+        case "tree":
+            tree(intArg(args, 1, 20));
+            break;
+        case "recovery":
+            recovery(intArg(args, 1, 4000000));
+            break;
+        case "edits":
+            edits(intArg(args, 1, 10000), intArg(args, 2, 2000));
+            break;
+        case "cache":
+            cache(intArg(args, 1, 10000));
+            break;
+        case "server":
+            server(intArg(args, 1, 2000), intArg(args, 2, 10));
+            break;
+        case "symbols":
+            symbols(intArg(args, 1, 100000));
+            break;
+        case "types":
+            types(intArg(args, 1, 5000), intArg(args, 2, Runtime.getRuntime().availableProcessors()));
+            break;
+        case "callgraph":
+            callGraph(intArg(args, 1, 50000));
+            break;
+        case "interpret":
+            interpret(intArg(args, 1, 5));
+            break;
+        case "deep":
+            deep(intArg(args, 1, 1000000));
+            break;
+        case "pipe":
+            pipe(intArg(args, 1, 1024));
+            break;
+        case "chunks":
+            chunks(intArg(args, 1, 200), intArg(args, 2, Runtime.getRuntime().availableProcessors()));
+            break;
+        default:
+            System.out.println("CALBench: Usage is one of:");
+            System.out.println("    java CALBench threads [files] [maxThreads]");
+            System.out.println("    java CALBench stream [sizeMB ...]");
+            System.out.println("    java CALBench lexer [sizeMB]");
+            System.out.println("    java CALBench tokens [sizeMB]");
+            System.out.println("    java CALBench chunks [sizeMB] [maxThreads]");
+            System.out.println("    java CALBench pipe [sizeMB]");
+            System.out.println("    java CALBench deep [count]");
+            System.out.println("    java CALBench conditions [sizeMB] [depth]");
+            System.out.println("    java CALBench twophase [sizeMB]");
+            System.out.println("    java CALBench tree [sizeMB]");
+            System.out.println("    java CALBench recovery [maxTokens]");
+            System.out.println("    java CALBench edits [lines] [count]");
+            System.out.println("    java CALBench cache [files]");
+            System.out.println("    java CALBench server [requests] [coldRuns]");
+            System.out.println("    java CALBench symbols [identifiers]");
+            System.out.println("    java CALBench types [functions] [maxThreads]");
+            System.out.println("    java CALBench callgraph [functions]");
+            System.out.println("    java CALBench interpret [rounds]");
+            break;
+        }
+    }
+
+    /** Batch parse throughput with 1, 2, 4 ... maxThreads worker threads. */
+    static void threads(int files, int maxThreads) {
+        List<String> names = new ArrayList<String>();
+        List<byte[]> sources = new ArrayList<byte[]>();
+        long bytes = 0;
+        Random random = new Random(42);
+        for (int i = 0; i < files; i++) {
+            byte[] src = program(random, 20, 10).getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+            names.add("gen" + i + ".cal");
+            sources.add(src);
+            bytes += src.length;
+        }
+        System.out.println(files + " files, " + bytes / 1024 + " KB");
+
+        // Warm up the JIT before timing anything
+        CALBatch.parseSources(names, sources, maxThreads);
+
+        double base = 0;
+        for (int t : threadCounts(maxThreads)) {
+            long start = System.nanoTime();
+            List<CALBatch.Result> results = CALBatch.parseSources(names, sources, t);
+            double secs = (System.nanoTime() - start) / 1e9;
+            for (CALBatch.Result r : results)
+                if (!r.ok())
+                    throw new IllegalStateException(r.name + ": " + r.error.getMessage());
+            double rate = files / secs;
+            if (t == 1)
+                base = rate;
+            System.out.printf("threads=%d  %.0f files/s  %.1f MB/s  speedup %.2fx%n",
+                              t, rate, bytes / secs / 1e6, rate / base);
+        }
+    }
+
+    /** Lexing throughput of JavaCharStream against MappedCharStream. */
+    static void stream(String[] sizes) throws java.io.IOException {
+        for (String size : sizes) {
+            long bytes = Long.parseLong(size) << 20;
+            java.nio.file.Path file = java.nio.file.Files.createTempFile("calbench", ".cal");
+            try {
+                generate(file, bytes);
+                for (int round = 0; round < 3; round++) {
+                    long start = System.nanoTime();
+                    long tokens;
+                    try (java.io.InputStream in = new java.io.FileInputStream(file.toFile())) {
+                        tokens = lex(new CALParserTokenManager(new JavaCharStream(in)));
+                    }
+                    double reader = (System.nanoTime() - start) / 1e9;
+
+                    start = System.nanoTime();
+                    long mappedTokens = lex(new CALParserTokenManager(MappedCharStream.open(file)));
+                    double mapped = (System.nanoTime() - start) / 1e9;
+                    if (mappedTokens != tokens)
+                        throw new IllegalStateException(tokens + " tokens vs " + mappedTokens);
+
+                    System.out.printf("%s MB  JavaCharStream %.1f MB/s  MappedCharStream %.1f MB/s  (%d tokens)%n",
+                                      size, bytes / reader / 1e6, bytes / mapped / 1e6, tokens);
+                }
+            } finally {
+                java.nio.file.Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Tokens per second through each lexer and char stream, in memory, on
+     * keyword-heavy generated programs, identifier-heavy text and code that
+     * is mostly comments.
+     */
+    static void lexer(int megabytes) {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(42);
+        while (sb.length() < megabytes << 20)
+            sb.append(program(random, 20, 10));
+        lexer("keywords", sb.toString());
+
+        sb.setLength(0);
+        while (sb.length() < megabytes << 20) {
+            for (int i = 0; i < 12; i++)
+                sb.append(identifier(random)).append(i % 3 == 2 ? ", " : " ");
+            sb.append('\n');
+        }
+        lexer("identifiers", sb.toString());
+
+        sb.setLength(0);
+        for (int f = 0; sb.length() < megabytes << 20; f++) {
+            sb.append("/*\n");
+            for (int i = 0; i < 30; i++)
+                sb.append(" * Licensed under the terms of the licence, line ").append(i).append(" /* nested */\n");
+            sb.append(" */\n");
+            sb.append("// ").append(identifier(random)).append(" := ").append(f).append(";\n");
+            sb.append("/* ");
+            function(sb, random, f, 10);
+            sb.append("*/\n");
+            function(sb, random, f, 2);
+        }
+        lexer("comments", sb.toString());
+    }
+
+    static void lexer(String corpus, String code) {
+        byte[] bytes = code.getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+        System.out.println(corpus + ", " + bytes.length / 1024 + " KB");
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            long chars = drain(new JavaCharStream(new java.io.StringReader(code)));
+            report("JavaCharStream, chars only", chars, bytes.length, start);
+
+            long heap = allocated();
+            start = System.nanoTime();
+            long tokens = lex(new CALParserTokenManager(new JavaCharStream(new java.io.StringReader(code))));
+            report("JavaCharStream", tokens, bytes.length, start, heap);
+
+            heap = allocated();
+            start = System.nanoTime();
+            tokens = lex(new CALParserTokenManager(new MappedCharStream(java.nio.ByteBuffer.wrap(bytes))));
+            report("MappedCharStream", tokens, bytes.length, start, heap);
+
+            heap = allocated();
+            start = System.nanoTime();
+            long tableTokens = lex(new CALTableTokenManager(new MappedCharStream(java.nio.ByteBuffer.wrap(bytes))));
+            report("MappedCharStream, table lexer", tableTokens, bytes.length, start, heap);
+            if (tableTokens != tokens)
+                throw new IllegalStateException(tokens + " tokens vs " + tableTokens);
+
+            CALTableTokenManager lazy = new CALTableTokenManager(new MappedCharStream(java.nio.ByteBuffer.wrap(bytes)));
+            lazy.setLazyImages(true);
+            heap = allocated();
+            start = System.nanoTime();
+            report("MappedCharStream, lazy images", lex(lazy), bytes.length, start, heap);
+        }
+    }
+
+    /**
+     * Memory per token and parse throughput of linked Token objects against
+     * a TokenBuffer read by CALIndexParser.
+     */
+    static void tokens(int megabytes) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        generate(sb, (long) megabytes << 20);
+        byte[] big = sb.toString().getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+        long before = usedHeap();
+        Token head = new Token();
+        Token tail = head;
+        CALTableTokenManager tm = new CALTableTokenManager(new MappedCharStream(java.nio.ByteBuffer.wrap(big)));
+        long count = 0;
+        do {
+            tail = tail.next = tm.getNextToken();
+            count++;
+        } while (tail.kind != CALParserConstants.EOF);
+        long linked = usedHeap() - before;
+        System.out.printf("linked Tokens  %5.1f bytes/token (%d tokens)%n", (double) linked / count, head.next == null ? 0 : count);
+        head = tail = null;
+
+        before = usedHeap();
+        TokenBuffer buffer = new TokenBuffer();
+        buffer.fill(new MappedCharStream(java.nio.ByteBuffer.wrap(big)));
+        long packed = usedHeap() - before;
+        System.out.printf("TokenBuffer    %5.1f bytes/token (%d tokens)%n", (double) packed / buffer.size(), buffer.size());
+
+        // The generated parser recurses once per list element, so parse
+        // throughput is measured on many ordinary sized files instead.
+        List<byte[]> sources = new ArrayList<byte[]>();
+        Random random = new Random(42);
+        long bytes = 0;
+        while (bytes < (long) megabytes << 20) {
+            byte[] src = program(random, 20, 10).getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+            sources.add(src);
+            bytes += src.length;
+        }
+        long tokens = 0;
+        for (byte[] src : sources) {
+            buffer.fill(new MappedCharStream(java.nio.ByteBuffer.wrap(src)));
+            tokens += buffer.size();
+        }
+        for (int round = 0; round < 5; round++) {
+            long heap = allocated();
+            long start = System.nanoTime();
+            for (byte[] src : sources)
+                new CALParser(new CALTableTokenManager(new MappedCharStream(java.nio.ByteBuffer.wrap(src)))).program();
+            report("CALParser, table lexer", tokens, bytes, start, heap);
+
+            heap = allocated();
+            start = System.nanoTime();
+            for (byte[] src : sources) {
+                buffer.fill(new MappedCharStream(java.nio.ByteBuffer.wrap(src)));
+                new CALIndexParser(buffer).program();
+            }
+            report("TokenBuffer + CALIndexParser", tokens, bytes, start, heap);
+        }
+    }
+
+    /**
+     * CALParser against the two-phase CALIndexParser.parse() on clean
+     * files, then on the same files with every hundredth one broken.
+     */
+    static void twoPhase(int megabytes) {
+        List<byte[]> sources = new ArrayList<byte[]>();
+        Random random = new Random(42);
+        long bytes = 0;
+        while (bytes < (long) megabytes << 20) {
+            byte[] src = program(random, 20, 10).getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+            sources.add(src);
+            bytes += src.length;
+        }
+        List<byte[]> broken = new ArrayList<byte[]>(sources);
+        for (int i = 0; i < broken.size(); i += 100) {
+            byte[] src = broken.get(i).clone();
+            src[src.length / 2] = ';';
+            broken.set(i, src);
+        }
+        TokenBuffer buffer = new TokenBuffer();
+        long tokens = 0;
+        for (byte[] src : sources) {
+            buffer.fill(new MappedCharStream(java.nio.ByteBuffer.wrap(src)));
+            tokens += buffer.size();
+        }
+
+        for (int round = 0; round < 5; round++) {
+            for (List<byte[]> set : java.util.Arrays.asList(sources, broken)) {
+                String what = set == sources ? "clean" : "1% broken";
+                long heap = allocated();
+                long start = System.nanoTime();
+                int failed = 0;
+                for (byte[] src : set) {
+                    try {
+                        new CALParser(new CALTableTokenManager(new MappedCharStream(java.nio.ByteBuffer.wrap(src)))).program();
+                    } catch (ParseException e) {
+                        failed++;
+                    }
+                }
+                report("CALParser, " + what, tokens, bytes, start, heap);
+
+                heap = allocated();
+                start = System.nanoTime();
+                for (byte[] src : set) {
+                    try {
+                        CALIndexParser.parse(new MappedCharStream(java.nio.ByteBuffer.wrap(src)), buffer);
+                    } catch (ParseException e) {
+                        failed--;
+                    }
+                }
+                report("two-phase, " + what, tokens, bytes, start, heap);
+                if (failed != 0)
+                    throw new IllegalStateException("the parsers disagree on " + what + " files");
+            }
+        }
+    }
+
+    /**
+     * Building a CALTree against recognising only with CALIndexParser, and
+     * the memory the tokens and the tree take per byte of source.
+     */
+    static void tree(int megabytes) throws ParseException {
+        List<byte[]> sources = new ArrayList<byte[]>();
+        Random random = new Random(42);
+        long bytes = 0;
+        while (bytes < (long) megabytes << 20) {
+            byte[] src = program(random, 20, 10).getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+            sources.add(src);
+            bytes += src.length;
+        }
+
+        List<CALTree> trees = new ArrayList<CALTree>(sources.size());
+        long before = usedHeap();
+        long tokens = 0, nodes = 0, arena = 0;
+        for (byte[] src : sources) {
+            CALTree tree = CALTree.parse(new MappedCharStream(java.nio.ByteBuffer.wrap(src)));
+            trees.add(tree);
+            tokens += tree.tokens().size();
+            nodes += tree.size();
+            arena += tree.arenaBytes();
+        }
+        long held = usedHeap() - before;
+        System.out.printf("%d files, %d KB, %d tokens, %d nodes%n", sources.size(), bytes / 1024, tokens, nodes);
+        System.out.printf("tokens + tree  %5.2f bytes/source byte, arena alone %5.2f%n",
+                          (double) held / bytes, (double) arena / bytes);
+        trees = null;
+
+        TokenBuffer buffer = new TokenBuffer();
+        for (int round = 0; round < 5; round++) {
+            long heap = allocated();
+            long start = System.nanoTime();
+            for (byte[] src : sources) {
+                buffer.fill(new MappedCharStream(java.nio.ByteBuffer.wrap(src)));
+                new CALIndexParser(buffer).program();
+            }
+            report("recognise only", tokens, bytes, start, heap);
+
+            heap = allocated();
+            start = System.nanoTime();
+            for (byte[] src : sources) {
+                buffer.fill(new MappedCharStream(java.nio.ByteBuffer.wrap(src)));
+                new CALIndexParser(buffer).tree();
+            }
+            report("build CALTree", tokens, bytes, start, heap);
+        }
+    }
+
+    /**
+     * programWithRecovery() on random tokens, from 1000 tokens up to
+     * maxTokens in steps of ten, to show the time per token stays flat.
+     * Since the grammar ignores whatever follows main's "end", the random
+     * tokens are also run as the body of main with no "begin" or "end"
+     * among them, which keeps the parser recovering all the way through.
+     */
+    static void recovery(int maxTokens) {
+        String[] words = {
+            "variable", "constant", "return", "integer", "boolean", "void", "if", "else",
+            "true", "false", "while", "skip", ",", ";", ":", ":=", "is", "(", ")",
+            "+", "-", "~", "|", "&", "=", "!=", "<", "<=", ">", ">=", "5", "x", "f0",
+            "main", "begin", "end",
+        };
+        for (int round = 0; round < 2; round++) {
+            for (boolean inMain : new boolean[] { false, true }) {
+                Random random = new Random(42);
+                for (int count = 1000; count <= maxTokens; count *= 10) {
+                    StringBuilder sb = new StringBuilder(inMain ? "main begin\n" : "");
+                    for (int i = 0; i < count; i++)
+                        sb.append(words[random.nextInt(words.length - (inMain ? 3 : 0))]).append(i % 16 == 15 ? '\n' : ' ');
+                    sb.append(inMain ? "end\n" : "");
+                    byte[] bytes = sb.toString().getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+                    sb = null;
+                    long start = System.nanoTime();
+                    int errors = new CALParser(new CALTableTokenManager(new MappedCharStream(java.nio.ByteBuffer.wrap(bytes))))
+                        .programWithRecovery().size();
+                    double secs = (System.nanoTime() - start) / 1e9;
+                    System.out.printf("%-8s %9d tokens  %8d errors  %7.1f ns/token%n",
+                                      inMain ? "in main" : "random", count, errors, secs * 1e9 / count);
+                }
+            }
+        }
+    }
+
+    /**
+     * Latency of single character edits to a program of about the given
+     * number of lines: CALDocument.edit() against lexing and parsing the
+     * edited text from scratch. Each edit puts a digit in front of a
+     * number and the next takes it out again, so the program stays valid.
+     */
+    static void edits(int lines, int count) throws ParseException {
+        checkEdits();
+        String text = program(new Random(42), lines / 16, 10);
+        List<Integer> numbers = new ArrayList<Integer>();
+        for (int i = 1; i < text.length(); i++)
+            if (Character.isDigit(text.charAt(i)) && !Character.isLetterOrDigit(text.charAt(i - 1)) && text.charAt(i - 1) != '-')
+                numbers.add(i);
+        System.out.println(text.split("\n").length + " lines, " + text.length() / 1024 + " KB");
+
+        CALDocument doc = new CALDocument(text);
+        StringBuilder current = new StringBuilder(text);
+        Random random = new Random(7);
+        for (int round = 0; round < 5; round++) {
+            long incremental = 0, full = 0, reparsed = 0;
+            for (int e = 0; e < count; e++) {
+                int at = numbers.get(random.nextInt(numbers.size()));
+                for (int step = 0; step < 2; step++) {
+                    long start = System.nanoTime();
+                    if (step == 0)
+                        doc.edit(at, 0, "1");
+                    else
+                        doc.edit(at, 1, "");
+                    incremental += System.nanoTime() - start;
+                    reparsed += doc.reparsed();
+
+                    if (step == 0)
+                        current.insert(at, '1');
+                    else
+                        current.deleteCharAt(at);
+                    byte[] bytes = current.toString().getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+                    start = System.nanoTime();
+                    CALTree.parse(new MappedCharStream(java.nio.ByteBuffer.wrap(bytes)));
+                    full += System.nanoTime() - start;
+                }
+            }
+            System.out.printf("edit() %7.1f us, %5.0f tokens re-parsed   full parse %8.1f us   %.0fx%n",
+                              incremental / 2e3 / count, reparsed / 2.0 / count, full / 2e3 / count,
+                              (double) full / incremental);
+        }
+    }
+
+    /**
+     * Edits that break and mend the text in awkward places, each checked
+     * against a CALDocument made from scratch from the edited text: the
+     * same tokens, and the same tree or the same syntax error. Each case is
+     * a text and edits of (at, removed, inserted), where at is the offset
+     * of a marker string in the current text.
+     */
+    static void checkEdits() throws ParseException {
+        String control = String.valueOf((char) 1);
+        Object[][] cases = {
+            // A tab or control character breaks a // comment into "/" and more tokens
+            { "main begin\n  skip; //ab c\nend\n", " c", 1, "\t", "\tc", 1, " " },
+            { "main begin\n  skip; //ab c\nend\n", " c", 0, control, control, 1, "" },
+            // So does the end of the file, before its newline
+            { "main begin\n  skip;\nend\n//x\n", "x\n", 2, "x", "x", 0, "\n" },
+            // Opening and closing a block comment
+            { "main begin\n  skip;\n  skip;\nend\n", "skip;\n  skip", 0, "/*", "  skip;\nend", 0, "*/" },
+        };
+        for (Object[] c : cases) {
+            String text = (String) c[0];
+            CALDocument doc = new CALDocument(text);
+            for (int i = 1; i < c.length; i += 3) {
+                int at = text.indexOf((String) c[i]);
+                int removed = (Integer) c[i + 1];
+                String inserted = (String) c[i + 2];
+                text = text.substring(0, at) + inserted + text.substring(at + removed);
+                String edited = null, fresh = null;
+                try {
+                    doc.edit(at, removed, inserted);
+                } catch (ParseException e) {
+                    edited = e.getMessage();
+                }
+                CALDocument scratch = null;
+                try {
+                    scratch = new CALDocument(text);
+                } catch (ParseException e) {
+                    fresh = e.getMessage();
+                }
+                TokenBuffer a = doc.tokens(), b = scratch == null ? null : scratch.tokens();
+                boolean same = java.util.Objects.equals(edited, fresh);
+                if (same && b != null) {
+                    same = a.size() == b.size() && doc.tree().toString().equals(scratch.tree().toString());
+                    for (int t = 0; same && t < a.size(); t++)
+                        same = a.kind(t) == b.kind(t) && a.offset(t) == b.offset(t) && a.length(t) == b.length(t);
+                }
+                if (!same)
+                    throw new IllegalStateException("edit " + (i / 3 + 1) + " of " + c[0] + " differs from a scratch parse: "
+                                                    + edited + " / " + fresh);
+            }
+        }
+        System.out.println(cases.length + " awkward edit sequences match a scratch parse");
+    }
+
+    /**
+     * A batch build of the given number of files, about one in a hundred of
+     * them broken, with no cache, with an empty cache and with a full one,
+     * and then with a cache too small to hold them all, building all the
+     * files, then the last fifth of them, then all again. Every outcome from
+     * the cache is checked against a fresh parse.
+     */
+    static void cache(int files) throws Exception {
+        java.nio.file.Path root = java.nio.file.Files.createTempDirectory("calcache");
+        java.nio.file.Path src = java.nio.file.Files.createDirectory(root.resolve("src"));
+        List<String> paths = new ArrayList<String>();
+        Random random = new Random(42);
+        long bytes = 0;
+        for (int i = 0; i < files; i++) {
+            String text = program(random, 4, 10);
+            if (random.nextInt(100) == 0)
+                text = text.replaceFirst(";", "");
+            java.nio.file.Path file = src.resolve("gen" + i + ".cal");
+            java.nio.file.Files.write(file, text.getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+            paths.add(file.toString());
+            bytes += text.length();
+        }
+        System.out.println(files + " files, " + bytes / 1024 + " KB");
+
+        // Warm up the JIT before timing anything
+        List<CALBatch.Result> fresh = CALBatch.parseFiles(paths, 1, new CALParseCache(root.resolve("warmup"), Long.MAX_VALUE));
+        fresh = CALBatch.parseFiles(paths, 1);
+        long start = System.nanoTime();
+        fresh = CALBatch.parseFiles(paths, 1);
+        System.out.printf("%-10s %8.1f ms%n", "no cache", (System.nanoTime() - start) / 1e6);
+
+        CALParseCache cache = new CALParseCache(root.resolve("cache"), Long.MAX_VALUE);
+        for (String run : new String[] { "cold", "warm", "reopened" }) {
+            if (run.equals("reopened"))
+                cache = new CALParseCache(root.resolve("cache"), Long.MAX_VALUE);
+            long hits = cache.hits(), misses = cache.misses();
+            start = System.nanoTime();
+            List<CALBatch.Result> results = CALBatch.parseFiles(paths, 1, cache);
+            System.out.printf("%-10s %8.1f ms  %6d hits  %6d misses  %6d KB cached%n", run,
+                              (System.nanoTime() - start) / 1e6, cache.hits() - hits, cache.misses() - misses,
+                              cache.size() / 1024);
+            check(paths, fresh, results, cache);
+        }
+
+        // A cache a quarter the size keeps the files built most recently
+        CALParseCache small = new CALParseCache(root.resolve("small"), cache.size() / 4);
+        CALBatch.parseFiles(paths, 1, small);
+        CALBatch.parseFiles(paths.subList(paths.size() * 4 / 5, paths.size()), 1, small);
+        CALBatch.parseFiles(paths, 1, small);
+        System.out.printf("%-10s %6d hits  %6d misses  %6d evictions  %6d KB cached%n", "1/4 size",
+                          small.hits(), small.misses(), small.evictions(), small.size() / 1024);
+
+        try (java.util.stream.Stream<java.nio.file.Path> walk = java.nio.file.Files.walk(root)) {
+            walk.sorted(java.util.Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /** Check that results from the cache agree with fresh ones, trees and all. */
+    static void check(List<String> paths, List<CALBatch.Result> fresh, List<CALBatch.Result> cached, CALParseCache cache)
+            throws Exception {
+        for (int i = 0; i < paths.size(); i++) {
+            String a = fresh.get(i).ok() ? null : fresh.get(i).error.getMessage();
+            String b = cached.get(i).ok() ? null : cached.get(i).error.getMessage();
+            if (a == null ? b != null : !a.equals(b))
+                throw new IllegalStateException(paths.get(i) + ": " + a + " but cached " + b);
+        }
+        for (int i = 0; i < paths.size(); i += 97) {
+            if (!fresh.get(i).ok())
+                continue;
+            byte[] bytes = java.nio.file.Files.readAllBytes(java.nio.file.Paths.get(paths.get(i)));
+            String tree = CALTree.parse(new MappedCharStream(java.nio.ByteBuffer.wrap(bytes))).toString();
+            if (!tree.equals(cache.parse(bytes).toString()))
+                throw new IllegalStateException(paths.get(i) + ": cached tree differs");
+        }
+    }
+
+    /**
+     * Latency of parsing one file through a CALServer, with a connection
+     * per request as a hook would make and with one connection for all,
+     * against running java CALClient and a cold java CALParser per file.
+     */
+    static void server(int requests, int coldRuns) throws Exception {
+        java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("calserver");
+        java.nio.file.Path file = dir.resolve("gen.cal");
+        java.nio.file.Files.write(file, program(new Random(42), 4, 10).getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+        java.nio.file.Path socket = dir.resolve("cal.sock");
+        CALServer server = new CALServer(socket);
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (java.io.IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        });
+        serving.setDaemon(true);
+        serving.start();
+        byte[] request = ("PARSE " + file + "\n").getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+        try {
+            for (int round = 0; round < 2; round++) {
+                long[] times = new long[requests];
+                for (int i = 0; i < requests; i++) {
+                    long start = System.nanoTime();
+                    try (java.nio.channels.SocketChannel c = java.nio.channels.SocketChannel.open(
+                             java.net.UnixDomainSocketAddress.of(socket))) {
+                        times[i] = ask(c, request, start);
+                    }
+                }
+                percentiles("connect per request", times);
+
+                times = new long[requests];
+                try (java.nio.channels.SocketChannel c = java.nio.channels.SocketChannel.open(
+                         java.net.UnixDomainSocketAddress.of(socket))) {
+                    for (int i = 0; i < requests; i++)
+                        times[i] = ask(c, request, System.nanoTime());
+                }
+                percentiles("one connection", times);
+            }
+
+            String launcher = java.nio.file.Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            String classpath = System.getProperty("java.class.path");
+            percentiles("java CALClient", run(coldRuns, launcher, "-cp", classpath, "CALClient", "-s", socket.toString(), file.toString()));
+            percentiles("java CALParser", run(coldRuns, launcher, "-cp", classpath, "CALParser", file.toString()));
+        } finally {
+            server.close();
+            java.nio.file.Files.deleteIfExists(file);
+            java.nio.file.Files.deleteIfExists(dir);
+        }
+    }
+
+    /** Send request on c and wait for the END of the answer. @return nanoseconds since start */
+    static long ask(java.nio.channels.SocketChannel c, byte[] request, long start) throws java.io.IOException {
+        c.write(java.nio.ByteBuffer.wrap(request));
+        java.io.InputStream in = java.nio.channels.Channels.newInputStream(c);
+        String line;
+        while ((line = CALServer.readLine(in)) != null && !line.startsWith("END "))
+            if (!line.endsWith("Parsed successfully."))
+                throw new IllegalStateException(line);
+        return System.nanoTime() - start;
+    }
+
+    /** @return the wall-clock time of each of count runs of command */
+    static long[] run(int count, String... command) throws Exception {
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            long start = System.nanoTime();
+            Process p = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            if (p.waitFor() != 0)
+                throw new IllegalStateException(String.join(" ", command) + " failed");
+            times[i] = System.nanoTime() - start;
+        }
+        return times;
+    }
+
+    static void percentiles(String what, long[] times) {
+        long[] sorted = times.clone();
+        java.util.Arrays.sort(sorted);
+        System.out.printf("%-20s %5d runs  p50 %9.1f us  p99 %9.1f us%n", what, sorted.length,
+                          sorted[sorted.length / 2] / 1e3, sorted[Math.min(sorted.length - 1, sorted.length * 99 / 100)] / 1e3);
+    }
+
+    /**
+     * Name resolution on a program with about the given number of
+     * identifiers, many of them distinct and some shadowing globals:
+     * CALSymbols against a stack of HashMaps keyed by image, checking that
+     * both resolve every use the same way.
+     */
+    static void symbols(int identifiers) throws ParseException {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        int globals = Math.max(1, identifiers / 50);
+        for (int g = 0; g < globals; g++)
+            sb.append("variable g").append(g).append(" : integer;\n");
+        int count = globals;
+        for (int f = 0; count < identifiers; f++) {
+            sb.append("integer f").append(f).append(" (a : integer, b : integer) is\n");
+            for (int l = 0; l < 4; l++)
+                sb.append("variable v").append(f).append('_').append(l).append(" : integer;\n");
+            sb.append("variable g").append(random.nextInt(globals)).append(" : integer;\n");
+            sb.append("begin\n");
+            for (int s = 0; s < 8; s++)
+                // Some uses in capitals, which name the same identifiers
+                sb.append(s % 3 == 0 ? "    V" : "    v").append(f).append('_').append(random.nextInt(4))
+                  .append(s % 4 == 0 ? " := A + G" : " := a + g").append(random.nextInt(globals)).append(";\n");
+            sb.append("    return (f").append(Math.max(0, f - 1)).append("(a, b));\nend\n");
+            count += 8 * 3 + 9 + 4;
+        }
+        sb.append("main begin\n    skip;\nend\n");
+        byte[] bytes = sb.toString().getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+        CALTree tree = CALTree.parse(new MappedCharStream(java.nio.ByteBuffer.wrap(bytes)));
+
+        CALSymbols symbols = CALSymbols.resolve(tree);
+        int uses = 0;
+        for (int n = 0; n < tree.size(); n++)
+            if (symbols.id(n) >= 0)
+                uses++;
+        System.out.println(uses + " identifiers, " + symbols.identifiers() + " distinct, "
+                           + symbols.errors().size() + " errors, " + bytes.length / 1024 + " KB");
+        int[] baseline = resolveByName(tree);
+        for (int n = 0; n < tree.size(); n++)
+            if (baseline[n] != symbols.declaration(n))
+                throw new IllegalStateException("node " + n + " resolves differently");
+        if (!symbols.errors().isEmpty())
+            throw new IllegalStateException(symbols.errors().get(0));
+
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            CALSymbols.resolve(tree);
+            long interned = System.nanoTime() - start;
+            start = System.nanoTime();
+            resolveByName(tree);
+            long byName = System.nanoTime() - start;
+            System.out.printf("CALSymbols %7.2f ms  %5.1f ns/identifier   HashMap<String> %7.2f ms  %5.1f ns/identifier%n",
+                              interned / 1e6, (double) interned / uses, byName / 1e6, (double) byName / uses);
+        }
+    }
+
+    /**
+     * Type checking a file of the given number of functions on 1, 2, 4 ...
+     * maxThreads threads, with a type error in about one statement in 500,
+     * checking that every thread count reports the same errors.
+     */
+    static void types(int functions, int maxThreads) throws ParseException {
+        String text = program(new Random(42), functions, 20).replaceAll("a \\+ ([0-9]*99);", "true;");
+        byte[] bytes = text.getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+        CALTree tree = CALTree.parse(new MappedCharStream(java.nio.ByteBuffer.wrap(bytes)));
+        CALSymbols symbols = CALSymbols.resolve(tree);
+        List<String> expected = CALTypes.check(symbols, 1).errors();
+        System.out.println(functions + " functions, " + tree.size() + " nodes, " + expected.size() + " type errors, "
+                           + bytes.length / 1024 + " KB");
+
+        for (int round = 0; round < 6; round++) {
+            double base = 0;
+            for (int t : threadCounts(maxThreads)) {
+                long start = System.nanoTime();
+                List<String> errors = CALTypes.check(symbols, t).errors();
+                double ms = (System.nanoTime() - start) / 1e6;
+                if (!errors.equals(expected))
+                    throw new IllegalStateException(t + " threads report different errors");
+                if (t == 1)
+                    base = ms;
+                System.out.printf("threads=%d  %8.2f ms  %6.1f ns/node  speedup %.2fx%n",
+                                  t, ms, ms * 1e6 / tree.size(), base / ms);
+            }
+        }
+    }
+
+    /**
+     * Building the call graph of a program where main reaches one function
+     * in ten, and how much pruning the rest saves type checking.
+     */
+    static void callGraph(int functions) throws ParseException {
+        byte[] bytes = callGraphProgram(new Random(42), functions).getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+        CALTree tree = CALTree.parse(new MappedCharStream(java.nio.ByteBuffer.wrap(bytes)));
+        CALSymbols symbols = CALSymbols.resolve(tree);
+        if (!symbols.errors().isEmpty())
+            throw new IllegalStateException(symbols.errors().get(0));
+        System.out.println(functions + " functions, " + tree.size() + " nodes, " + bytes.length / 1024 + " KB");
+
+        CALCallGraph graph = null;
+        for (int round = 0; round < 6; round++) {
+            long start = System.nanoTime();
+            graph = CALCallGraph.build(symbols);
+            double ms = (System.nanoTime() - start) / 1e6;
+            System.out.printf("build  %8.2f ms  %6.1f ns/node%n", ms, ms * 1e6 / tree.size());
+        }
+        int recursive = 0;
+        for (int f = 0; f < graph.functions(); f++)
+            if (graph.recursive(f))
+                recursive++;
+        System.out.println(graph.unreachable() + " unreachable, " + graph.components() + " components, "
+                           + recursive + " recursive");
+
+        CALTree pruned = null;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            pruned = graph.prune();
+            System.out.printf("prune  %8.2f ms  %d -> %d nodes%n", (System.nanoTime() - start) / 1e6,
+                              tree.size(), pruned.size());
+        }
+        CALSymbols prunedSymbols = CALSymbols.resolve(pruned);
+        if (!prunedSymbols.errors().isEmpty())
+            throw new IllegalStateException("pruned tree: " + prunedSymbols.errors().get(0));
+        if (CALCallGraph.build(prunedSymbols).unreachable() != 0)
+            throw new IllegalStateException("pruned tree still has unreachable functions");
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            CALTypes.check(symbols, 1);
+            double whole = (System.nanoTime() - start) / 1e6;
+            start = System.nanoTime();
+            CALTypes.check(CALSymbols.resolve(pruned), 1);
+            double part = (System.nanoTime() - start) / 1e6;
+            System.out.printf("types  %8.2f ms whole, %8.2f ms pruned and resolved again%n", whole, part);
+        }
+    }
+
+    /**
+     * Every tenth function is live and calls the live one before it, and
+     * some of those call themselves; the others call any earlier function.
+     * main calls the last live function.
+     */
+    static String callGraphProgram(Random random, int functions) {
+        StringBuilder sb = new StringBuilder();
+        header(sb);
+        int live = -1;
+        for (int f = 0; f < functions; f++) {
+            sb.append("integer f").append(f).append(" (a : integer, b : integer) is\n");
+            sb.append("variable x : integer;\n");
+            sb.append("begin\n");
+            sb.append("    x := a + ").append(random.nextInt(1000)).append(";\n");
+            if (f % 10 == 0) {
+                if (live >= 0)
+                    sb.append("    x := f").append(live).append("(a, x);\n");
+                if (f % 70 == 0)
+                    sb.append("    if a > 0 begin x := f").append(f).append("(x, b); end else begin skip; end\n");
+                live = f;
+            } else {
+                for (int c = 0; c < 2 && f > 0; c++)
+                    sb.append("    x := f").append(random.nextInt(f)).append("(a, x);\n");
+            }
+            sb.append("    return (x);\n");
+            sb.append("end\n");
+        }
+        sb.append("main begin\n");
+        sb.append("variable r : integer;\n");
+        if (live >= 0)
+            sb.append("    r := f").append(live).append("(c, g);\n");
+        else
+            sb.append("    r := c;\n");
+        sb.append("end\n");
+        return sb.toString();
+    }
+
+    /** Programs for the interpret mode, each leaving its answer in the global result. */
+    static final String[][] INTERPRET = {
+        { "loop", "10000000 iterations of a while loop with an if", "-2004260039",
+          "variable result : integer;\n"
+          + "constant n : integer := 10000000;\n"
+          + "main begin\n"
+          + "variable i : integer;\n"
+          + "    i := n;\n"
+          + "    while i > 0 begin\n"
+          + "        if i - begin i - 1 end = 1 & ~(i = 7) begin result := result + i; end\n"
+          + "        else begin skip; end\n"
+          + "        i := i - 1;\n"
+          + "    end\n"
+          + "end\n" },
+        { "nested", "3000 x 3000 nested while loops", "4498500",
+          "variable result : integer;\n"
+          + "main begin\n"
+          + "variable i : integer;\n"
+          + "variable j : integer;\n"
+          + "    i := 0;\n"
+          + "    while i < 3000 begin\n"
+          + "        j := 0;\n"
+          + "        while j < 3000 begin\n"
+          + "            if j < i begin result := result + 1; end\n"
+          + "            j := j + 1;\n"
+          + "        end\n"
+          + "        i := i + 1;\n"
+          + "    end\n"
+          + "end\n" },
+        { "fib", "doubly recursive fib(27)", "196418",
+          "variable result : integer;\n"
+          + "integer fib (k : integer) is\n"
+          + "variable a : integer;\n"
+          + "variable b : integer;\n"
+          + "begin\n"
+          + "    if k < 2 begin a := k; end\n"
+          + "    else begin\n"
+          + "        a := k - 1;\n"
+          + "        b := k - 2;\n"
+          + "        a := fib(a) + fib(b);\n"
+          + "    end\n"
+          + "    return (a);\n"
+          + "end\n"
+          + "main begin\n"
+          + "variable n : integer;\n"
+          + "    n := 27;\n"
+          + "    result := fib(n);\n"
+          + "end\n" },
+        { "deep", "100 recursive sums 100000 calls deep", "1788793664",
+          "variable result : integer;\n"
+          + "integer sum (k : integer, total : integer) is\n"
+          + "constant one : integer := 1;\n"
+          + "variable m : integer;\n"
+          + "begin\n"
+          + "    if k = 0 begin m := total; end\n"
+          + "    else begin m := k - one; total := total + k; m := sum(m, total); end\n"
+          + "    return (m);\n"
+          + "end\n"
+          + "main begin\n"
+          + "variable i : integer;\n"
+          + "variable n : integer;\n"
+          + "    i := 100;\n"
+          + "    n := 100000;\n"
+          + "    while i > 0 begin result := sum(n, result); i := i - 1; end\n"
+          + "end\n" },
+    };
+
+    /**
+     * Steps and calls per second of CALInterpreter on loops and recursive
+     * functions, checking each answer. Runs on a thread with a large stack
+     * for the deep recursion.
+     */
+    static void interpret(int rounds) throws Exception {
+        Throwable[] failure = new Throwable[1];
+        Thread running = new Thread(null, () -> {
+            try {
+                for (String[] program : INTERPRET)
+                    interpret(program, rounds);
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "interpret", 1L << 30);
+        running.start();
+        running.join();
+        if (failure[0] instanceof Exception)
+            throw (Exception) failure[0];
+        if (failure[0] != null)
+            throw new IllegalStateException(failure[0]);
+    }
+
+    static void interpret(String[] program, int rounds) throws ParseException {
+        CALTree tree = CALTree.parse(new MappedCharStream(java.nio.ByteBuffer.wrap(
+            program[3].getBytes(java.nio.charset.StandardCharsets.US_ASCII))));
+        CALInterpreter interpreter = CALInterpreter.load(CALConstants.fold(CALTypes.check(CALSymbols.resolve(tree), 1)));
+        int result = interpreter.globals().get(0);
+        System.out.println(program[0] + ": " + program[1]);
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            interpreter.run();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (interpreter.global(result) != Integer.parseInt(program[2]))
+                throw new IllegalStateException(program[0] + " gave " + interpreter.global(result) + ", not " + program[2]);
+            System.out.printf("  %8.1f ms  %10d steps  %6.1f M steps/s  %6.2f M calls/s%n", seconds * 1e3,
+                              interpreter.steps(), interpreter.steps() / seconds / 1e6, interpreter.calls() / seconds / 1e6);
+        }
+    }
+
+    /** The scoping of CALSymbols, done with a HashMap per scope keyed by image in lower case. */
+    static int[] resolveByName(CALTree tree) {
+        int[] declarations = new int[tree.size()];
+        java.util.Arrays.fill(declarations, -1);
+        java.util.ArrayDeque<java.util.HashMap<String, Integer>> scopes = new java.util.ArrayDeque<java.util.HashMap<String, Integer>>();
+        scopes.push(new java.util.HashMap<String, Integer>());
+        for (int item = tree.firstChild(tree.root()); item >= 0; item = tree.next(item)) {
+            boolean scoped = tree.kind(item) == CALTree.FUNCTION || tree.kind(item) == CALTree.MAIN;
+            if (tree.kind(item) == CALTree.FUNCTION)
+                scopes.peek().putIfAbsent(tree.image(item).toLowerCase(java.util.Locale.ROOT), item);
+            if (scoped)
+                scopes.push(new java.util.HashMap<String, Integer>());
+            for (int n = tree.first(item); n < (scoped ? item : item + 1); n++) {
+                switch (tree.kind(n)) {
+                case CALTree.VAR_DECL:
+                case CALTree.CONST_DECL:
+                case CALTree.PARAM:
+                    scopes.peek().putIfAbsent(tree.image(n).toLowerCase(java.util.Locale.ROOT), n);
+                    break;
+                case CALTree.VAR:
+                case CALTree.CALL:
+                case CALTree.ASSIGN:
+                    String name = tree.image(n).toLowerCase(java.util.Locale.ROOT);
+                    for (java.util.HashMap<String, Integer> scope : scopes) {
+                        Integer d = scope.get(name);
+                        if (d != null) {
+                            declarations[n] = d;
+                            break;
+                        }
+                    }
+                    break;
+                default:
+                    break;
+                }
+            }
+            if (scoped)
+                scopes.pop();
+        }
+        return declarations;
+    }
+
+    /**
+     * Lexing one large file on 1, 2, 4 ... maxThreads threads, checking the
+     * chunked lexer's tokens against the sequential ones every time.
+     */
+    static void chunks(int megabytes, int maxThreads) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        generate(sb, (long) megabytes << 20);
+        byte[] bytes = sb.toString().getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+        sb = null;
+        System.out.println(bytes.length / 1024 + " KB");
+
+        TokenBuffer expected = new TokenBuffer();
+        expected.fill(new MappedCharStream(java.nio.ByteBuffer.wrap(bytes)));
+        TokenBuffer tokens = new TokenBuffer();
+        double base = 0;
+        for (int round = 0; round < 3; round++) {
+            for (int t : threadCounts(maxThreads)) {
+                long start = System.nanoTime();
+                tokens.fill(new MappedCharStream(java.nio.ByteBuffer.wrap(bytes)), t);
+                double secs = (System.nanoTime() - start) / 1e9;
+                if (!sameTokens(expected, tokens))
+                    throw new IllegalStateException("chunked lexing with " + t + " threads differs");
+                if (t == 1)
+                    base = secs;
+                System.out.printf("threads=%d  %.1f MB/s  speedup %.2fx  (%d tokens)%n",
+                                  t, bytes.length / secs / 1e6, base / secs, tokens.size());
+            }
+        }
+    }
+
+    static boolean sameTokens(TokenBuffer a, TokenBuffer b) {
+        if (a.size() != b.size())
+            return false;
+        for (int i = 0; i < a.size(); i++)
+            if (a.kind(i) != b.kind(i) || a.offset(i) != b.offset(i) || a.length(i) != b.length(i))
+                return false;
+        return true;
+    }
+
+    /** Parse throughput on programs made of deeply bracketed conditions. */
+    static void conditions(int megabytes, int depth) throws ParseException {
+        List<byte[]> sources = new ArrayList<byte[]>();
+        Random random = new Random(42);
+        long bytes = 0;
+        while (bytes < (long) megabytes << 20) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("integer f0 (a : integer, b : integer) is\nbegin\n    return (a);\nend\n");
+            sb.append("main begin\nvariable a : integer;\nvariable b : integer;\n");
+            for (int i = 0; i < 200; i++) {
+                sb.append(random.nextBoolean() ? "    if " : "    while ");
+                condition(sb, random, depth);
+                sb.append(" begin a := f0(a, b); end\n");
+            }
+            sb.append("end\n");
+            byte[] src = sb.toString().getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+            sources.add(src);
+            bytes += src.length;
+        }
+        long tokens = 0;
+        TokenBuffer buffer = new TokenBuffer();
+        for (byte[] src : sources) {
+            buffer.fill(new MappedCharStream(java.nio.ByteBuffer.wrap(src)));
+            tokens += buffer.size();
+        }
+        System.out.println(sources.size() + " files, " + bytes / 1024 + " KB");
+
+        for (int round = 0; round < 10; round++) {
+            long heap = allocated();
+            long start = System.nanoTime();
+            for (byte[] src : sources)
+                new CALParser(new CALTableTokenManager(new MappedCharStream(java.nio.ByteBuffer.wrap(src)))).program();
+            report("CALParser, table lexer", tokens, bytes, start, heap);
+        }
+    }
+
+    /** A random condition nested up to depth brackets deep. */
+    static void condition(StringBuilder sb, Random random, int depth) {
+        if (depth == 0) {
+            String[] ops = { "=", "!=", "<", "<=", ">", ">=" };
+            sb.append(random.nextBoolean() ? "a" : "f0(a, b)").append(' ');
+            sb.append(ops[random.nextInt(ops.length)]).append(' ');
+            sb.append(random.nextBoolean() ? "-5" : "b + 1");
+            return;
+        }
+        switch (random.nextInt(3)) {
+        case 0:
+            sb.append("~(");
+            condition(sb, random, depth - 1);
+            sb.append(')');
+            break;
+        case 1:
+            sb.append('(');
+            condition(sb, random, depth - 1);
+            sb.append(") & (");
+            condition(sb, random, depth - 1);
+            sb.append(')');
+            break;
+        default:
+            sb.append('(');
+            condition(sb, random, depth - 1);
+            sb.append(") | a = b");
+            break;
+        }
+    }
+
+    /**
+     * Parse, on the main thread's default stack, a program with count
+     * declarations, functions, parameters, arguments and statements in
+     * each of its lists, and count operands in one expression and in one
+     * condition.
+     */
+    static void deep(int count) throws ParseException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++)
+            sb.append("variable v").append(i).append(" : integer;\n");
+        sb.append("integer f (p0 : integer");
+        for (int i = 1; i < count; i++)
+            sb.append(", p").append(i).append(" : integer");
+        sb.append(") is\nbegin\n    return (p0);\nend\n");
+        for (int i = 0; i < count; i++)
+            sb.append("void g").append(i).append(" () is begin return (); end\n");
+        sb.append("main begin\nvariable x : integer;\n    x := f(v0");
+        for (int i = 1; i < count; i++)
+            sb.append(", v").append(i);
+        sb.append(");\n");
+        for (int i = 0; i < count; i++)
+            sb.append("    x := x + 1;\n");
+        sb.append("    x := x");
+        for (int i = 1; i < count; i++)
+            sb.append(i % 2 == 0 ? " + " : " - ").append(i);
+        sb.append(";\n    if x = 0");
+        for (int i = 1; i < count; i++)
+            sb.append(i % 2 == 0 ? " & ~x = " : " | x < ").append(i);
+        sb.append(" begin skip; end\n");
+        sb.append("end\n");
+        byte[] bytes = sb.toString().getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+        sb = null;
+        System.out.println(count + " of each, " + bytes.length / 1024 + " KB");
+
+        long start = System.nanoTime();
+        new CALParser(new java.io.ByteArrayInputStream(bytes)).program();
+        report("CALParser", count * 7L, bytes.length, start);
+
+        start = System.nanoTime();
+        TokenBuffer tokens = new TokenBuffer();
+        tokens.fill(new MappedCharStream(java.nio.ByteBuffer.wrap(bytes)));
+        new CALIndexParser(tokens).program();
+        report("TokenBuffer + CALIndexParser", count * 7L, bytes.length, start);
+    }
+
+    /**
+     * Stream a generated input of the given size through CALTokens without
+     * ever holding it in memory; run with a small -Xmx to check that memory
+     * use does not grow with the input.
+     */
+    static void pipe(int megabytes) {
+        long bytes = (long) megabytes << 20;
+        long start = System.nanoTime();
+        long ids = CALTokens.stream(new ProgramReader(bytes)).filter(t -> t.kind == CALParserConstants.ID).count();
+        report("CALTokens.stream, IDs", ids, bytes, start);
+
+        long[] numbers = new long[1];
+        start = System.nanoTime();
+        long tokens = CALTokens.forEach(new CALTableTokenManager(new JavaCharStream(new ProgramReader(bytes))), t -> {
+            if (t.kind == CALParserConstants.NUMBER)
+                numbers[0]++;
+        });
+        report("CALTokens.forEach", tokens, bytes, start);
+        System.out.printf("%d NUMBER tokens, heap in use %.1f MB of %.1f MB max%n", numbers[0],
+                          usedHeap() / 1e6, Runtime.getRuntime().maxMemory() / 1e6);
+    }
+
+    /** Generated functions, on and on until the given number of characters. */
+    static class ProgramReader extends java.io.Reader {
+        private final Random random = new Random(42);
+        private final StringBuilder sb = new StringBuilder();
+        private long remaining;
+        private int next = 0;
+        private int functions = 0;
+
+        ProgramReader(long size) {
+            remaining = size;
+            header(sb);
+        }
+
+        public int read(char[] cbuf, int off, int len) {
+            if (next == sb.length()) {
+                if (remaining <= 0)
+                    return -1;
+                sb.setLength(0);
+                next = 0;
+                function(sb, random, functions++ % 1000, 10);
+            }
+            int n = Math.min(len, sb.length() - next);
+            sb.getChars(next, next + n, cbuf, off);
+            next += n;
+            remaining -= n;
+            return n;
+        }
+
+        public void close() {
+        }
+    }
+
+    /** @return heap in use after asking for a collection */
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    static void report(String what, long tokens, long bytes, long start) {
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-32s %6.2f M items/s  %6.1f MB/s%n", what, tokens / secs / 1e6, bytes / secs / 1e6);
+    }
+
+    /** As report(), adding the bytes allocated per item since heapBefore. */
+    static void report(String what, long tokens, long bytes, long start, long heapBefore) {
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-32s %6.2f M items/s  %6.1f MB/s  %5.1f B/item%n", what, tokens / secs / 1e6,
+                          bytes / secs / 1e6, (double) (allocated() - heapBefore) / tokens);
+    }
+
+    /** @return bytes allocated so far by this thread, or 0 if the JVM cannot tell */
+    static long allocated() {
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return 0;
+    }
+
+    /** @return the number of characters read before EOF */
+    static long drain(CharStream stream) {
+        long count = 0;
+        try {
+            for (;;) {
+                stream.BeginToken();
+                count++;
+            }
+        } catch (java.io.IOException e) {
+            return count;
+        }
+    }
+
+    /** @return the number of tokens before EOF */
+    static long lex(CALParserTokenManager tm) {
+        long count = 0;
+        while (tm.getNextToken().kind != CALParserConstants.EOF)
+            count++;
+        return count;
+    }
+
+    /** Write a generated program of roughly the given size to file. */
+    static void generate(java.nio.file.Path file, long bytes) throws java.io.IOException {
+        try (java.io.Writer out = java.nio.file.Files.newBufferedWriter(file, java.nio.charset.StandardCharsets.US_ASCII)) {
+            generate(out, bytes);
+        }
+    }
+
+    /** Append a generated program of roughly the given size to out. */
+    static void generate(Appendable out, long bytes) throws java.io.IOException {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        header(sb);
+        int functions = 0;
+        long written = 0;
+        while (written < bytes) {
+            written += sb.length();
+            out.append(sb);
+            sb.setLength(0);
+            function(sb, random, functions++, 10);
+        }
+        mainBlock(sb, Math.min(functions, 20));
+        out.append(sb);
+    }
+
+    /** 1, 2, 4 ... up to and including max. */
+    static List<Integer> threadCounts(int max) {
+        List<Integer> counts = new ArrayList<Integer>();
+        for (int t = 1; t < max; t *= 2)
+            counts.add(t);
+        counts.add(max);
+        return counts;
+    }
+
+    /**
+     * Generate a syntactically valid CAL program with the given number of
+     * functions, each holding roughly the given number of statements.
+     */
+    static String program(Random random, int functions, int statements) {
+        StringBuilder sb = new StringBuilder();
+        header(sb);
+        for (int f = 0; f < functions; f++)
+            function(sb, random, f, statements);
+        mainBlock(sb, functions);
+        return sb.toString();
+    }
+
+    static void header(StringBuilder sb) {
+        sb.append("/* generated */\n");
+        sb.append("variable g : integer;\n");
+        sb.append("constant c : integer := 5;\n");
+    }
+
+    static void function(StringBuilder sb, Random random, int f, int statements) {
+        sb.append("integer f").append(f).append(" (a : integer, b : integer) is\n");
+        sb.append("variable x : integer;\n");
+        sb.append("begin\n");
+        for (int s = 0; s < statements; s++)
+            statement(sb, random, f);
+        sb.append("    return (x);\n");
+        sb.append("end\n");
+    }
+
+    /** main, calling the first count functions. */
+    static void mainBlock(StringBuilder sb, int count) {
+        sb.append("main begin\n");
+        sb.append("variable r : integer;\n");
+        sb.append("    r := c;\n");
+        for (int f = 0; f < count; f++)
+            sb.append("    r := f").append(f).append("(r, g);\n");
+        sb.append("end\n");
+    }
+
+    static void statement(StringBuilder sb, Random random, int function) {
+        switch (random.nextInt(5)) {
+        case 0:
+            sb.append("    x := a + ").append(random.nextInt(1000)).append(";\n");
+            break;
+        case 1:
+            sb.append("    if x > 3 & ~(a = b) begin x := x - 1; end\n");
+            sb.append("    else begin skip; end\n");
+            break;
+        case 2:
+            sb.append("    while x >= 0 | b != a begin x := x - b; end // count down\n");
+            break;
+        case 3:
+            // The first function has nothing to call: give it the default statement
+            if (function > 0)
+                sb.append("    x := f").append(random.nextInt(function)).append("(a, x);\n");
+            else
+                sb.append("    begin b := -a; skip; end\n");
+            break;
+        default:
+            sb.append("    begin b := -a; skip; end\n");
+            break;
+        }
+    }
+
+    /** A random identifier, sometimes one that starts like a keyword. */
+    static String identifier(Random random) {
+        String[] stems = { "v", "i", "begin", "end", "whil", "x", "retur", "is", "total" };
+        StringBuilder sb = new StringBuilder(stems[random.nextInt(stems.length)]);
+        for (int n = random.nextInt(8); n > 0; n--)
+            sb.append("abcdefghijklmnopqrstuvwxyz_0123456789".charAt(random.nextInt(37)));
+        return sb.toString();
+    }
+
+    static int intArg(String[] args, int index, int fallback) {
+        return args.length > index ? Integer.parseInt(args[index]) : fallback;
+    }
+}
@@ -0,0 +1,224 @@
+import java.util.Arrays;
+
+/**
+ * The calls between the functions of a resolved CAL program: which
+ * functions main can reach, and which are recursive.
+ *
+ * Functions are numbered in the order they are declared, and main comes
+ * after them all. The edges are held in two int arrays, the callees of
+ * each function in one run, as in a compressed sparse row matrix, so the
+ * graph takes a few ints per call. Reachability is a breadth-first search
+ * from main, and recursion is found from the strongly connected
+ * components, by Tarjan's algorithm run with an explicit stack so that a
+ * long chain of calls cannot overflow the Java one.
+ *
+ * prune() gives a tree without the functions main cannot reach, for
+ * later phases to work on instead.
+ */
+public class CALCallGraph {
+
+    private final CALSymbols symbols;
+    private final CALTree tree;
+    /** Node of each function, and of main at the end. */
+    private final int[] nodes;
+    /** Callees of function f are callees[start[f]] .. callees[start[f + 1] - 1], once per call. */
+    private final int[] start;
+    private final int[] callees;
+    private final boolean[] reachable;
+    private final int[] component;
+    private final boolean[] recursive;
+    private int components;
+    private int unreachable;
+
+    private CALCallGraph(CALSymbols symbols) {
+        this.symbols = symbols;
+        this.tree = symbols.tree();
+        int functions = 0;
+        for (int item = tree.firstChild(tree.root()); item >= 0; item = tree.next(item))
+            if (tree.kind(item) == CALTree.FUNCTION || tree.kind(item) == CALTree.MAIN)
+                functions++;
+        nodes = new int[functions];
+        start = new int[functions + 1];
+        int[] calls = new int[16];
+        int count = 0;
+        int f = 0;
+        int[] number = new int[tree.size()];
+        for (int item = tree.firstChild(tree.root()); item >= 0; item = tree.next(item)) {
+            if (tree.kind(item) != CALTree.FUNCTION && tree.kind(item) != CALTree.MAIN)
+                continue;
+            nodes[f] = item;
+            number[item] = f;
+            start[f] = count;
+            for (int n = tree.first(item); n < item; n++) {
+                int d = tree.kind(n) == CALTree.CALL ? symbols.declaration(n) : -1;
+                if (d >= 0 && tree.kind(d) == CALTree.FUNCTION) {
+                    if (count == calls.length)
+                        calls = Arrays.copyOf(calls, count * 2);
+                    // A function is declared before it is called, so d is numbered
+                    calls[count++] = number[d];
+                }
+            }
+            f++;
+        }
+        start[functions] = count;
+        callees = Arrays.copyOf(calls, count);
+        reachable = new boolean[functions];
+        component = new int[functions];
+        recursive = new boolean[functions];
+    }
+
+    /** @return the call graph of the program symbols was resolved for */
+    public static CALCallGraph build(CALSymbols symbols) {
+        CALCallGraph graph = new CALCallGraph(symbols);
+        graph.reach();
+        graph.connect();
+        return graph;
+    }
+
+    private void reach() {
+        int[] queue = new int[nodes.length];
+        int head = 0, tail = 0;
+        int main = main();
+        reachable[main] = true;
+        queue[tail++] = main;
+        while (head < tail) {
+            int f = queue[head++];
+            for (int e = start[f]; e < start[f + 1]; e++) {
+                int g = callees[e];
+                if (!reachable[g]) {
+                    reachable[g] = true;
+                    queue[tail++] = g;
+                }
+            }
+        }
+        unreachable = nodes.length - tail;
+    }
+
+    /** Tarjan's strongly connected components, without recursion. */
+    private void connect() {
+        int size = nodes.length;
+        int[] index = new int[size], low = new int[size], edge = new int[size];
+        int[] path = new int[size], stack = new int[size];
+        boolean[] onStack = new boolean[size];
+        Arrays.fill(index, -1);
+        int counter = 0, sp = 0;
+        for (int root = 0; root < size; root++) {
+            if (index[root] >= 0)
+                continue;
+            int depth = 0;
+            path[0] = root;
+            index[root] = low[root] = counter++;
+            edge[root] = start[root];
+            stack[sp++] = root;
+            onStack[root] = true;
+            while (depth >= 0) {
+                int v = path[depth];
+                if (edge[v] < start[v + 1]) {
+                    int w = callees[edge[v]++];
+                    if (w == v) {
+                        recursive[v] = true;
+                    } else if (index[w] < 0) {
+                        index[w] = low[w] = counter++;
+                        edge[w] = start[w];
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                        path[++depth] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                if (low[v] == index[v]) {
+                    int first = sp;
+                    do {
+                        first--;
+                        onStack[stack[first]] = false;
+                        component[stack[first]] = components;
+                    } while (stack[first] != v);
+                    if (sp - first > 1)
+                        for (int i = first; i < sp; i++)
+                            recursive[stack[i]] = true;
+                    sp = first;
+                    components++;
+                }
+                if (--depth >= 0)
+                    low[path[depth]] = Math.min(low[path[depth]], low[v]);
+            }
+        }
+    }
+
+    /** @return the symbols the graph was built from */
+    public CALSymbols symbols() {
+        return symbols;
+    }
+
+    /** @return the number of functions, counting main */
+    public int functions() {
+        return nodes.length;
+    }
+
+    /** @return the number of main, which is the last */
+    public int main() {
+        return nodes.length - 1;
+    }
+
+    /** @return the FUNCTION or MAIN node of function f */
+    public int node(int f) {
+        return nodes[f];
+    }
+
+    /** @return the number of calls function f makes */
+    public int calls(int f) {
+        return start[f + 1] - start[f];
+    }
+
+    /** @return the function called by call i of function f, in source order */
+    public int callee(int f, int i) {
+        return callees[start[f] + i];
+    }
+
+    /** @return true if main can reach function f */
+    public boolean reachable(int f) {
+        return reachable[f];
+    }
+
+    /** @return the number of functions main cannot reach */
+    public int unreachable() {
+        return unreachable;
+    }
+
+    /**
+     * @return the strongly connected component of function f. Functions
+     *         share one if and only if each can reach the other; they are
+     *         numbered callees first.
+     */
+    public int component(int f) {
+        return component[f];
+    }
+
+    /** @return the number of strongly connected components */
+    public int components() {
+        return components;
+    }
+
+    /** @return true if function f can call itself, directly or not */
+    public boolean recursive(int f) {
+        return recursive[f];
+    }
+
+    /**
+     * @return the tree without the functions main cannot reach, or the
+     *         same tree if it can reach them all. The symbols of the new
+     *         tree have to be resolved again.
+     */
+    public CALTree prune() {
+        if (unreachable == 0)
+            return tree;
+        int[] roots = new int[unreachable];
+        int r = 0;
+        for (int f = 0; f < nodes.length; f++)
+            if (!reachable[f])
+                roots[r++] = nodes[f];
+        return tree.without(roots);
+    }
+}
@@ -0,0 +1,80 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Sends files to a running CALServer and prints what it answers, with the
+ * exit status the batch command line would give. It loads next to none of
+ * the parser, so it starts quickly. With no server listening the files are
+ * parsed here instead.
+ *
+ * Usage: java CALClient [-s socket] file ...   ("-" reads standard input)
+ */
+public class CALClient {
+
+    public static void main(String[] args) throws IOException {
+        Path socket = CALServer.defaultSocket();
+        int first = 0;
+        if (args.length >= 2 && args[0].equals("-s")) {
+            socket = Paths.get(args[1]);
+            first = 2;
+        }
+        if (first == args.length) {
+            System.err.println("CAL Client: Usage is");
+            System.err.println("    java CALClient [-s socket] file ...");
+            System.exit(CALBatch.EXIT_IO);
+        }
+
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            System.exit(CALBatch.command(java.util.Arrays.copyOfRange(args, first, args.length), System.out, System.err));
+            return;
+        }
+        int status = CALBatch.EXIT_OK;
+        try (SocketChannel c = channel) {
+            OutputStream out = Channels.newOutputStream(c);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(c));
+            for (int i = first; i < args.length; i++) {
+                if (args[i].equals("-")) {
+                    byte[] source = System.in.readAllBytes();
+                    out.write(("SOURCE " + source.length + " " + CALBatch.STDIN + "\n").getBytes(StandardCharsets.US_ASCII));
+                    out.write(source);
+                } else if (args[i].indexOf('\n') >= 0) {
+                    // It would end the request line early
+                    System.out.println(args[i] + ": Cannot send a file name with a newline in it.");
+                    status = Math.max(status, CALBatch.EXIT_IO);
+                    continue;
+                } else {
+                    String path = Paths.get(args[i]).toAbsolutePath().toString();
+                    out.write(("PARSE " + path + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                status = Math.max(status, answer(in));
+            }
+        }
+        System.out.flush();
+        System.exit(status);
+    }
+
+    /**
+     * Print the lines of one answer from in.
+     * @return the status on its END line
+     */
+    static int answer(InputStream in) throws IOException {
+        String line;
+        while ((line = CALServer.readLine(in)) != null) {
+            if (line.startsWith("END "))
+                return Integer.parseInt(line.substring(4));
+            System.out.println(line.startsWith("\\") ? line.substring(1) : line);
+        }
+        throw new IOException("The server closed the connection");
+    }
+}
@@ -0,0 +1,212 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Folds every expression and condition of a type-checked CAL program
+ * whose value is known before it runs, and keeps the values for later
+ * phases, which can then read a folded node's value instead of walking
+ * its children again.
+ *
+ * Numbers, true and false are constant; so is a use of a constant whose
+ * initialiser is, "-" before one, and an operator or comparison whose
+ * operands are. Integers are 32-bit and wrap around like Java ints;
+ * booleans are held as 1 and 0. A number too large for 32 bits is
+ * reported and left unfolded. Nodes with type errors are never folded.
+ *
+ * The tree is read once in storage order, children first. A constant is
+ * declared before it is used, so its initialiser has normally been folded
+ * by the time a use is reached; one that has not is folded there and
+ * then, and a constant that turns out to depend on itself is reported as
+ * a cycle.
+ */
+public class CALConstants {
+
+    private static final byte UNKNOWN = 0, FOLDED = 1, NOT_CONSTANT = 2, IN_PROGRESS = 3;
+
+    private final CALTypes types;
+    private final CALTree tree;
+    private final byte[] state;
+    private final int[] values;
+    private final List<String> errors = new ArrayList<String>();
+
+    private CALConstants(CALTypes types) {
+        this.types = types;
+        this.tree = types.symbols().tree();
+        state = new byte[tree.size()];
+        values = new int[tree.size()];
+    }
+
+    /** @return the constants of the program types were checked for */
+    public static CALConstants fold(CALTypes types) {
+        CALConstants constants = new CALConstants(types);
+        constants.fold(0, constants.tree.size());
+        return constants;
+    }
+
+    /** Fold nodes from .. to - 1, in storage order. */
+    private void fold(int from, int to) {
+        for (int n = from; n < to; n++)
+            if (state[n] == UNKNOWN)
+                state[n] = node(n) ? FOLDED : NOT_CONSTANT;
+    }
+
+    /** Work out the value of node n, whose children are done. @return false if it is not constant */
+    private boolean node(int n) {
+        if (types.type(n) == CALTypes.NONE && tree.kind(n) != CALTree.CONST_DECL)
+            return false;
+        int child = tree.firstChild(n);
+        switch (tree.kind(n)) {
+        case CALTree.NUMBER:
+            return number(n);
+        case CALTree.BOOLEAN:
+            values[n] = tree.tokenKind(n) == CALParserConstants.TRUE ? 1 : 0;
+            return true;
+        case CALTree.VAR: {
+            int d = types.symbols().declaration(n);
+            if (d < 0 || tree.kind(d) != CALTree.CONST_DECL || !constant(d, n))
+                return false;
+            values[n] = values[d];
+            return true;
+        }
+        case CALTree.NEG:
+            if (state[child] != FOLDED)
+                return false;
+            values[n] = -values[child];
+            return true;
+        case CALTree.BINARY:
+        case CALTree.COMPARE:
+        case CALTree.AND:
+        case CALTree.OR: {
+            int right = tree.next(child);
+            if (state[child] != FOLDED || state[right] != FOLDED || !checked(n))
+                return false;
+            values[n] = apply(tree.tokenKind(n), values[child], values[right]);
+            return true;
+        }
+        case CALTree.NOT:
+            if (state[child] != FOLDED)
+                return false;
+            values[n] = 1 - values[child];
+            return true;
+        case CALTree.CONST_DECL: {
+            int value = tree.next(child);
+            if (state[value] != FOLDED || types.type(value) != types.type(child))
+                return false;
+            values[n] = values[value];
+            return true;
+        }
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Make sure constant d is folded, for a use at node use.
+     * @return true if it is constant
+     */
+    private boolean constant(int d, int use) {
+        if (state[d] == IN_PROGRESS) {
+            errors.add("Constant \"" + tree.image(d) + "\" at line " + tree.line(d) + ", column " + tree.column(d)
+                       + " depends on itself, through line " + tree.line(use) + ", column " + tree.column(use) + ".");
+            return false;
+        }
+        if (state[d] == UNKNOWN) {
+            state[d] = IN_PROGRESS;
+            fold(tree.first(d), d);
+            state[d] = node(d) ? FOLDED : NOT_CONSTANT;
+        }
+        return state[d] == FOLDED;
+    }
+
+    /** @return false if the operands of n have types it does not take */
+    private boolean checked(int n) {
+        int left = tree.firstChild(n);
+        int a = types.type(left), b = types.type(tree.next(left));
+        switch (tree.kind(n)) {
+        case CALTree.BINARY:
+            return a == CALTypes.INTEGER && b == CALTypes.INTEGER;
+        case CALTree.COMPARE: {
+            int op = tree.tokenKind(n);
+            return a == b && (a == CALTypes.INTEGER
+                              || a == CALTypes.BOOLEAN && (op == CALParserConstants.EQUAL || op == CALParserConstants.NOT_EQUAL));
+        }
+        default:
+            return true;
+        }
+    }
+
+    private static int apply(int op, int a, int b) {
+        switch (op) {
+        case CALParserConstants.PLUS:
+            return a + b;
+        case CALParserConstants.MINUS:
+            return a - b;
+        case CALParserConstants.OR:
+            return a | b;
+        case CALParserConstants.AND:
+            return a & b;
+        case CALParserConstants.EQUAL:
+            return a == b ? 1 : 0;
+        case CALParserConstants.NOT_EQUAL:
+            return a != b ? 1 : 0;
+        case CALParserConstants.LESS_THAN:
+            return a < b ? 1 : 0;
+        case CALParserConstants.LESS_THAN_EQUAL_TO:
+            return a <= b ? 1 : 0;
+        case CALParserConstants.GREATER_THAN:
+            return a > b ? 1 : 0;
+        default:
+            return a >= b ? 1 : 0;
+        }
+    }
+
+    /** Read the NUMBER at n straight from the source. @return false if it does not fit in 32 bits */
+    private boolean number(int n) {
+        TokenBuffer tokens = tree.tokens();
+        ByteBuffer source = tokens.source().buffer();
+        int t = tree.token(n);
+        int at = tokens.offset(t), end = at + tokens.length(t);
+        boolean negative = source.get(at) == '-';
+        long value = 0;
+        for (int i = negative ? at + 1 : at; i < end; i++) {
+            value = value * 10 + (source.get(i) - '0');
+            if (value > 1L << 31)
+                break;
+        }
+        value = negative ? -value : value;
+        if (value != (int) value) {
+            errors.add("Number " + tree.image(n) + " at line " + tree.line(n) + ", column " + tree.column(n)
+                       + " does not fit in 32 bits.");
+            return false;
+        }
+        values[n] = (int) value;
+        return true;
+    }
+
+    /** @return the types the constants were folded from */
+    public CALTypes types() {
+        return types;
+    }
+
+    /**
+     * @return true if the value of expression or condition n, or of the
+     *         initialiser of constant declaration n, is known before the
+     *         program runs
+     */
+    public boolean isConstant(int n) {
+        return state[n] == FOLDED;
+    }
+
+    /** @return the value of constant node n: an integer, or 1 or 0 for a boolean */
+    public int value(int n) {
+        if (state[n] != FOLDED)
+            throw new IllegalArgumentException("node " + n + " is not constant");
+        return values[n];
+    }
+
+    /** @return a message for each number that does not fit and each constant that depends on itself */
+    public List<String> errors() {
+        return errors;
+    }
+}
@@ -0,0 +1,210 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The text of one CAL source together with its tokens and CALTree, kept up
+ * to date as the text is edited.
+ *
+ * An edit re-lexes only from the last token that ends before the line it
+ * is on up to the first token after it that starts where an old token
+ * started. Between tokens the lexer is always in code, outside any
+ * comment, so from that point on the old tokens are exactly what lexing
+ * would produce again; an edit that opens or closes a comment simply
+ * re-lexes further. Starting before the line matters because some tokens
+ * depend on text past their end: a "/" is lexed on its own when the "//"
+ * comment it starts is broken by a tab or control character later on the
+ * line, and is a comment again once that character is gone. The tokens
+ * that changed are then re-parsed as part of the top-level declaration,
+ * function or main they fall in, and that item's subtree is swapped into
+ * the tree. If the changes span more than one item, or the item no longer
+ * parses to the same extent, the whole token list is parsed again, and a
+ * syntax error is reported exactly as CALParser would report it.
+ */
+public class CALDocument {
+
+    private byte[] text;
+    private int length;
+    private MappedCharStream stream;
+    private final TokenBuffer tokens;
+    /** The tree of the current text, or null if it does not parse. */
+    private CALTree tree;
+    private int reparsed;
+    private final TokenBuffer relexed = new TokenBuffer(64);
+
+    /** Parse text, which has to be ASCII. */
+    public CALDocument(String text) throws ParseException {
+        this.text = text.getBytes(StandardCharsets.ISO_8859_1);
+        length = this.text.length;
+        stream = new MappedCharStream(ByteBuffer.wrap(this.text, 0, length));
+        tokens = new TokenBuffer();
+        tokens.fill(stream);
+        reparsed = tokens.size();
+        tree = CALTree.parse(tokens, stream);
+    }
+
+    /** @return the current text */
+    public String text() {
+        return new String(text, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /** @return the tokens of the current text, updated in place by each edit */
+    public TokenBuffer tokens() {
+        return tokens;
+    }
+
+    /**
+     * @return the tree of the current text, updated in place by each edit,
+     *         or null if the last edit left the text with a syntax error
+     */
+    public CALTree tree() {
+        return tree;
+    }
+
+    /** @return how many tokens the last edit had the parser read again */
+    public int reparsed() {
+        return reparsed;
+    }
+
+    /**
+     * Replace removed characters at offset with inserted. The text changes
+     * whether or not it still parses.
+     * @throws ParseException if the new text does not parse; tree() is then
+     *         null until an edit makes it parse again
+     */
+    public void edit(int offset, int removed, String inserted) throws ParseException {
+        byte[] insert = inserted.getBytes(StandardCharsets.ISO_8859_1);
+        int delta = insert.length - removed;
+        if (length + delta > text.length)
+            text = java.util.Arrays.copyOf(text, Math.max(length + delta, text.length * 3 / 2));
+        System.arraycopy(text, offset + removed, text, offset + insert.length, length - offset - removed);
+        System.arraycopy(insert, 0, text, offset, insert.length);
+        length += delta;
+        stream = new MappedCharStream(ByteBuffer.wrap(text, 0, length));
+
+        // Tokens before first end before the line of the edit, with room
+        // for the character that told the lexer they had ended. Re-lex from
+        // there up to the first token at or after the edit that starts
+        // where an old token did, which is sync.
+        int lineStart = offset;
+        while (lineStart > 0 && text[lineStart - 1] != '\n' && text[lineStart - 1] != '\r')
+            lineStart--;
+        int first = endingBefore(tokens, lineStart);
+        int resume = first == 0 ? 0 : tokens.offset(first - 1) + tokens.length(first - 1);
+        int editEnd = offset + insert.length;
+        int eof = tokens.size() - 1;
+        int sync = tokens.size();
+        int j = first;
+        relexed.clear(stream);
+        stream.seek(resume);
+        CALTableTokenManager tm = new CALTableTokenManager(stream);
+        for (;;) {
+            int kind = tm.nextKind();
+            int start = stream.getBeginOffset();
+            if (kind != CALParserConstants.EOF && start >= editEnd) {
+                while (j < eof && tokens.offset(j) < start - delta)
+                    j++;
+                if (j < eof && tokens.offset(j) == start - delta) {
+                    sync = j;
+                    break;
+                }
+            }
+            relexed.add(kind, stream);
+            if (kind == CALParserConstants.EOF)
+                break;
+        }
+
+        // Leave out relexed tokens that came out the same as before
+        int same = 0;
+        while (same < relexed.size() && first + same < sync && relexed.kind(same) == tokens.kind(first + same)
+               && relexed.offset(same) == tokens.offset(first + same) && relexed.length(same) == tokens.length(first + same))
+            same++;
+        int changed = first + same;
+        int tokenDelta = relexed.size() - (sync - first);
+        boolean unchanged = same == relexed.size() && changed == sync;
+        tokens.replace(first, sync, relexed, delta, stream);
+
+        if (tree != null && unchanged) {
+            reparsed = 0;
+            return;
+        }
+        if (tree != null && reparseItem(changed, sync, tokenDelta))
+            return;
+        reparsed = tokens.size();
+        tree = null;
+        tree = CALTree.parse(tokens, stream);
+    }
+
+    /**
+     * Re-parse the top-level item that held the old tokens changed .. sync
+     * - 1, and put its new subtree in the tree.
+     * @return false if the whole program has to be parsed again instead
+     */
+    private boolean reparseItem(int changed, int sync, int tokenDelta) {
+        int program = tree.root();
+        int item = -1, start = -1, end = -1;
+        for (int c = tree.firstChild(program); c >= 0; c = tree.next(c)) {
+            if (tree.kind(c) == CALTree.DECLS) {
+                for (int d = tree.firstChild(c); d >= 0; d = tree.next(d)) {
+                    int s = tree.token(d) - 1;
+                    if (s > changed)
+                        break;
+                    item = d;
+                    start = s;
+                }
+            } else {
+                int s = tree.kind(c) == CALTree.FUNCTION ? tree.token(tree.firstChild(c)) : tree.token(c);
+                if (s > changed)
+                    break;
+                item = c;
+                start = s;
+            }
+        }
+        if (item < 0)
+            return false;
+        int kind = tree.kind(item);
+        if (kind != CALTree.MAIN) {
+            end = itemEnd(tree, item);
+            if (sync > end)
+                return false;
+        }
+
+        CALTree part = new CALTree(tokens, 64);
+        int after;
+        try {
+            after = new CALIndexParser(tokens).item(kind, start, part);
+        } catch (ParseException e) {
+            return false;
+        }
+        if (kind != CALTree.MAIN && after != end + tokenDelta)
+            return false;
+        reparsed = after - start;
+        tree.replace(item, part, sync, tokenDelta);
+        return true;
+    }
+
+    /** @return the token index just past top-level item, which is not main */
+    private static int itemEnd(CALTree tree, int item) {
+        int next = tree.next(item);
+        if (tree.kind(item) != CALTree.FUNCTION) {
+            if (next >= 0)
+                return tree.token(next) - 1;
+            // The last top-level declaration: whatever follows the DECLS
+            int decls = tree.firstChild(tree.root());
+            next = tree.next(decls);
+        }
+        return tree.kind(next) == CALTree.FUNCTION ? tree.token(tree.firstChild(next)) : tree.token(next);
+    }
+
+    /** @return the number of leading tokens that end before offset */
+    private static int endingBefore(TokenBuffer tokens, int offset) {
+        int lo = 0, hi = tokens.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tokens.offset(mid) + tokens.length(mid) < offset)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,446 @@
+/**
+ * A CAL parser that reads its tokens by index out of a TokenBuffer.
+ *
+ * It accepts exactly the language of CALParser, making the same choices
+ * with the same lookahead, but never follows Token.next: the current token
+ * is just a position in the kinds array. Token objects are only built when
+ * a ParseException needs them. Error messages list the tokens expected at
+ * the point of failure, which is not always the full set the generated
+ * parser would collect; parse(stream, buffer) falls back to CALParser when
+ * the message matters. tree() builds a CALTree as it parses.
+ */
+public class CALIndexParser implements CALParserConstants {
+
+    private final TokenBuffer tokens;
+    private int[] kinds;
+    private int pos;
+    /** The tree being built, or null when only recognising. */
+    private CALTree tree;
+
+    /** Constructor. */
+    public CALIndexParser(TokenBuffer tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Parse stream as a program in two phases. The tokens are parsed first
+     * with no expected-token bookkeeping at all. Only if that fails is the
+     * stream parsed again from the start by CALParser, so the exception
+     * thrown is exactly the one CALParser would throw.
+     * @param buffer reused for the tokens, as by TokenBuffer.fill()
+     */
+    public static void parse(MappedCharStream stream, TokenBuffer buffer) throws ParseException {
+        buffer.fill(stream);
+        try {
+            new CALIndexParser(buffer).program();
+        } catch (ParseException fast) {
+            stream.seek(0);
+            new CALParser(new CALTableTokenManager(stream)).program();
+            throw fast;
+        }
+    }
+
+    /** Parse the whole buffer as a program. */
+    public void program() throws ParseException {
+        kinds = tokens.kinds();
+        pos = 0;
+        int m = mark();
+        decl_list();
+        function_list();
+        main();
+        close(CALTree.PROGRAM, 0, m);
+    }
+
+    /** Parse the whole buffer as a program and build its CALTree. */
+    public CALTree tree() throws ParseException {
+        tree = new CALTree(tokens);
+        try {
+            program();
+            return tree;
+        } finally {
+            tree = null;
+        }
+    }
+
+    /**
+     * Parse just the top-level item that starts at token from, building
+     * its subtree into part.
+     * @param kind what the item has to be: VAR_DECL or CONST_DECL for a
+     *        declaration with its ";", FUNCTION or MAIN (CALTree kinds)
+     * @return the index of the token after the item
+     */
+    int item(int kind, int from, CALTree part) throws ParseException {
+        kinds = tokens.kinds();
+        pos = from;
+        tree = part;
+        try {
+            switch (kind) {
+            case CALTree.FUNCTION:
+                function();
+                break;
+            case CALTree.MAIN:
+                main();
+                break;
+            default:
+                if (kinds[pos] == VARIABLE)
+                    var_decl();
+                else
+                    const_decl();
+                consume(SEMIC);
+            }
+            return pos;
+        } finally {
+            tree = null;
+        }
+    }
+
+    private void decl_list() throws ParseException {
+        int m = mark();
+        int t = pos;
+        while (kinds[pos] == VARIABLE || kinds[pos] == CONSTANT) {
+            if (kinds[pos] == VARIABLE)
+                var_decl();
+            else
+                const_decl();
+            consume(SEMIC);
+        }
+        close(CALTree.DECLS, t, m);
+    }
+
+    private void var_decl() throws ParseException {
+        consume(VARIABLE);
+        int id = pos;
+        consume(ID);
+        consume(COLON);
+        int m = mark();
+        type();
+        close(CALTree.VAR_DECL, id, m);
+    }
+
+    private void const_decl() throws ParseException {
+        consume(CONSTANT);
+        int id = pos;
+        consume(ID);
+        consume(COLON);
+        int m = mark();
+        type();
+        consume(ASSIGN);
+        expression();
+        close(CALTree.CONST_DECL, id, m);
+    }
+
+    private void function_list() throws ParseException {
+        while (isType(kinds[pos]))
+            function();
+    }
+
+    private void function() throws ParseException {
+        int m = mark();
+        type();
+        int id = pos;
+        consume(ID);
+        consume(LBR);
+        parameter_list();
+        consume(RBR);
+        consume(IS);
+        decl_list();
+        int begin = pos;
+        consume(BEGIN);
+        statement_block(begin);
+        int ret = pos;
+        consume(RETURN);
+        int r = mark();
+        consume(LBR);
+        if (startsExpression(kinds[pos]))
+            expression();
+        consume(RBR);
+        close(CALTree.RETURN, ret, r);
+        consume(SEMIC);
+        consume(END);
+        close(CALTree.FUNCTION, id, m);
+    }
+
+    private void type() throws ParseException {
+        if (!isType(kinds[pos]))
+            throw error(INTEGER, BOOLEAN, VOID);
+        leaf(CALTree.TYPE, pos);
+        pos++;
+    }
+
+    private void parameter_list() throws ParseException {
+        int m = mark();
+        int t = pos;
+        if (kinds[pos] == ID) {
+            for (;;) {
+                int id = pos;
+                consume(ID);
+                consume(COLON);
+                int p = mark();
+                type();
+                close(CALTree.PARAM, id, p);
+                if (kinds[pos] != COMMA)
+                    break;
+                pos++;
+            }
+        }
+        close(CALTree.PARAMS, t, m);
+    }
+
+    private void main() throws ParseException {
+        int m = mark();
+        int t = pos;
+        consume(MAIN);
+        int begin = pos;
+        consume(BEGIN);
+        decl_list();
+        statement_block(begin);
+        consume(END);
+        close(CALTree.MAIN, t, m);
+    }
+
+    /** @param t the token to give the BLOCK node */
+    private void statement_block(int t) throws ParseException {
+        int m = mark();
+        for (;;) {
+            int s = pos;
+            switch (kinds[pos]) {
+            case ID:
+                pos++;
+                statement_choice(s);
+                break;
+            case BEGIN:
+                pos++;
+                statement_block(s);
+                consume(END);
+                break;
+            case IF:
+            case WHILE: {
+                pos++;
+                int c = mark();
+                condition();
+                int begin = pos;
+                consume(BEGIN);
+                statement_block(begin);
+                consume(END);
+                close(kinds[s] == IF ? CALTree.IF : CALTree.WHILE, s, c);
+                break;
+            }
+            case ELSE: {
+                pos++;
+                int c = mark();
+                int begin = pos;
+                consume(BEGIN);
+                statement_block(begin);
+                consume(END);
+                close(CALTree.ELSE, s, c);
+                break;
+            }
+            case SKP:
+                leaf(CALTree.SKIP, s);
+                pos++;
+                consume(SEMIC);
+                break;
+            default:
+                close(CALTree.BLOCK, t, m);
+                return;
+            }
+        }
+    }
+
+    /** @param id the identifier that starts the statement */
+    private void statement_choice(int id) throws ParseException {
+        int m = mark();
+        switch (kinds[pos]) {
+        case ASSIGN:
+            pos++;
+            expression();
+            consume(SEMIC);
+            close(CALTree.ASSIGN, id, m);
+            break;
+        case LBR:
+            pos++;
+            arg_list();
+            consume(RBR);
+            consume(SEMIC);
+            close(CALTree.CALL, id, m);
+            break;
+        default:
+            throw error(ASSIGN, LBR);
+        }
+    }
+
+    private void expression() throws ParseException {
+        int m = mark();
+        fragment();
+        while (kinds[pos] == PLUS || kinds[pos] == MINUS) {
+            int op = pos++;
+            fragment();
+            close(CALTree.BINARY, op, m);
+        }
+    }
+
+    private void fragment() throws ParseException {
+        int t = pos;
+        switch (kinds[pos]) {
+        case ID:
+            pos++;
+            // LOOKAHEAD(2): "(" followed by the start of an arg_list or ")"
+            if (kinds[pos] == LBR && (kinds[pos + 1] == ID || kinds[pos + 1] == RBR)) {
+                int m = mark();
+                pos++;
+                arg_list();
+                consume(RBR);
+                close(CALTree.CALL, t, m);
+            } else {
+                leaf(CALTree.VAR, t);
+            }
+            break;
+        case MINUS: {
+            pos++;
+            int m = mark();
+            int id = pos;
+            consume(ID);
+            leaf(CALTree.VAR, id);
+            close(CALTree.NEG, t, m);
+            break;
+        }
+        case NUMBER:
+            leaf(CALTree.NUMBER, t);
+            pos++;
+            break;
+        case TRUE:
+        case FALSE:
+            leaf(CALTree.BOOLEAN, t);
+            pos++;
+            break;
+        case BEGIN:
+            pos++;
+            expression();
+            consume(END);
+            break;
+        default:
+            throw error(ID, MINUS, NUMBER, TRUE, FALSE, BEGIN);
+        }
+    }
+
+    private void condition() throws ParseException {
+        int m = mark();
+        conjunction();
+        while (kinds[pos] == OR) {
+            int op = pos++;
+            conjunction();
+            close(CALTree.OR, op, m);
+        }
+    }
+
+    private void conjunction() throws ParseException {
+        int m = mark();
+        condition_simple();
+        while (kinds[pos] == AND) {
+            int op = pos++;
+            condition_simple();
+            close(CALTree.AND, op, m);
+        }
+    }
+
+    private void condition_simple() throws ParseException {
+        int nots = pos;
+        while (kinds[pos] == NOT)
+            pos++;
+        int m = mark();
+        int last = pos - 1;
+        if (kinds[pos] == LBR && startsCondition(kinds[pos + 1])) {
+            pos++;
+            condition();
+            consume(RBR);
+        } else {
+            expression();
+            int op = pos;
+            comp_op();
+            expression();
+            close(CALTree.COMPARE, op, m);
+        }
+        // Each "~" applies to everything after it, the innermost first
+        for (int not = last; not >= nots; not--)
+            close(CALTree.NOT, not, m);
+    }
+
+    private void comp_op() throws ParseException {
+        switch (kinds[pos]) {
+        case EQUAL:
+        case NOT_EQUAL:
+        case LESS_THAN:
+        case LESS_THAN_EQUAL_TO:
+        case GREATER_THAN:
+        case GREATER_THAN_EQUAL_TO:
+            pos++;
+            break;
+        default:
+            throw error(EQUAL, NOT_EQUAL, LESS_THAN, LESS_THAN_EQUAL_TO, GREATER_THAN, GREATER_THAN_EQUAL_TO);
+        }
+    }
+
+    private void arg_list() throws ParseException {
+        if (kinds[pos] != ID)
+            return;
+        leaf(CALTree.VAR, pos++);
+        while (kinds[pos] == COMMA) {
+            pos++;
+            int id = pos;
+            consume(ID);
+            leaf(CALTree.VAR, id);
+        }
+    }
+
+    private int mark() {
+        return tree == null ? 0 : tree.depth();
+    }
+
+    private void leaf(int kind, int token) {
+        if (tree != null)
+            tree.leaf(kind, token);
+    }
+
+    private void close(int kind, int token, int mark) {
+        if (tree != null)
+            tree.close(kind, token, mark);
+    }
+
+    private static boolean isType(int kind) {
+        return kind == INTEGER || kind == BOOLEAN || kind == VOID;
+    }
+
+    private static boolean startsExpression(int kind) {
+        switch (kind) {
+        case ID:
+        case MINUS:
+        case NUMBER:
+        case TRUE:
+        case FALSE:
+        case BEGIN:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static boolean startsCondition(int kind) {
+        return kind == NOT || kind == LBR || startsExpression(kind);
+    }
+
+    private void consume(int kind) throws ParseException {
+        if (kinds[pos] != kind)
+            throw error(kind);
+        pos++;
+    }
+
+    /** @return an exception for the token at pos, building Tokens for it */
+    private ParseException error(int... expected) {
+        Token current = pos > 0 ? tokens.token(pos - 1) : new Token();
+        current.next = tokens.token(pos);
+        int[][] sequences = new int[expected.length][];
+        for (int i = 0; i < expected.length; i++)
+            sequences[i] = new int[] { expected[i] };
+        return new ParseException(current, sequences, tokenImage);
+    }
+}
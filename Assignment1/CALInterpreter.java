@@ -0,0 +1,431 @@
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs a CAL program that has been resolved, type checked and folded
+ * without errors, by walking its tree.
+ *
+ * The global declarations are made first, in order, and then main is run.
+ * Integers are 32 bits and wrap around like Java ints; booleans are held
+ * as 1 and 0. Variables start at 0, or false, and a constant takes the
+ * value of its initialiser when its declaration is reached. An else runs
+ * only straight after an if whose condition was false. A function returns
+ * the value of its return expression once its body has run.
+ *
+ * Before the program runs, each variable, constant and parameter is given
+ * a slot: the global ones an index in one array, the others an offset
+ * from the start of the frame of the function they belong to. Every use
+ * and assignment is given the slot of its declaration, and every call the
+ * node of its function, so nothing is looked up by name while it runs.
+ * Frames are pushed onto one int array. Expressions that CALConstants
+ * folded are read as their value, and operators and comparisons get one
+ * operation each, so each node is a single switch.
+ *
+ * A call takes a few Java frames, so a deeply recursive program should be
+ * run on a thread with a large stack, as main() does.
+ */
+public class CALInterpreter {
+
+    /** Operations, besides the CALTree kinds that are run as they are. */
+    private static final int LITERAL = 26, ADD = 27, SUB = 28,
+        EQ = 29, NE = 30, LT = 31, LE = 32, GT = 33, GE = 34;
+
+    private final CALConstants constants;
+    private final CALTree tree;
+    /** Operation of each node. */
+    private final int[] ops;
+    /**
+     * Slot of each declaration, use and assignment, the local ones from 0
+     * up and the global ones as ~index; the function node of each call;
+     * the frame size of each function and of main.
+     */
+    private final int[] slots;
+    /** Value of each LITERAL; the DECLS node of each function and of main. */
+    private final int[] values;
+    private final int globalsNode, mainNode;
+
+    private int[] globals;
+    private int[] stack = new int[1024];
+    private int fp, sp;
+    private long steps, calls;
+
+    private CALInterpreter(CALConstants constants) {
+        this.constants = constants;
+        this.tree = constants.types().symbols().tree();
+        ops = new int[tree.size()];
+        slots = new int[tree.size()];
+        values = new int[tree.size()];
+        int globalCount = 0, decls = -1, main = -1;
+        CALSymbols symbols = constants.types().symbols();
+        for (int item = tree.firstChild(tree.root()); item >= 0; item = tree.next(item)) {
+            boolean global = tree.kind(item) == CALTree.DECLS;
+            int locals = 0;
+            for (int n = tree.first(item); n <= item; n++) {
+                ops[n] = operation(n);
+                switch (ops[n]) {
+                case CALTree.PARAM:
+                case CALTree.VAR_DECL:
+                case CALTree.CONST_DECL:
+                    slots[n] = global ? ~globalCount++ : locals++;
+                    break;
+                case CALTree.VAR:
+                case CALTree.ASSIGN:
+                case CALTree.CALL:
+                    // Declarations come before their uses, so d already has its slot
+                    int d = symbols.declaration(n);
+                    slots[n] = ops[n] == CALTree.CALL ? d : slots[d];
+                    break;
+                case CALTree.FUNCTION:
+                case CALTree.MAIN:
+                    slots[n] = locals;
+                    values[n] = tree.kind(n) == CALTree.MAIN ? tree.child(n, 0) : tree.child(n, 2);
+                    break;
+                default:
+                    break;
+                }
+            }
+            if (global)
+                decls = item;
+            else if (tree.kind(item) == CALTree.MAIN)
+                main = item;
+        }
+        globals = new int[globalCount];
+        globalsNode = decls;
+        mainNode = main;
+    }
+
+    /** @return the operation that runs node n */
+    private int operation(int n) {
+        int kind = tree.kind(n);
+        if (kind != CALTree.CONST_DECL && constants.isConstant(n)) {
+            values[n] = constants.value(n);
+            return LITERAL;
+        }
+        switch (kind) {
+        case CALTree.BINARY:
+            return tree.tokenKind(n) == CALParserConstants.PLUS ? ADD : SUB;
+        case CALTree.COMPARE:
+            switch (tree.tokenKind(n)) {
+            case CALParserConstants.EQUAL:
+                return EQ;
+            case CALParserConstants.NOT_EQUAL:
+                return NE;
+            case CALParserConstants.LESS_THAN:
+                return LT;
+            case CALParserConstants.LESS_THAN_EQUAL_TO:
+                return LE;
+            case CALParserConstants.GREATER_THAN:
+                return GT;
+            default:
+                return GE;
+            }
+        default:
+            return kind;
+        }
+    }
+
+    /**
+     * @return an interpreter for the program constants were folded for
+     * @throws IllegalArgumentException if resolving, checking or folding it
+     *         reported errors
+     */
+    public static CALInterpreter load(CALConstants constants) {
+        CALTypes types = constants.types();
+        if (!types.symbols().errors().isEmpty() || !types.errors().isEmpty() || !constants.errors().isEmpty())
+            throw new IllegalArgumentException("the program has errors and cannot be run");
+        return new CALInterpreter(constants);
+    }
+
+    /**
+     * Make the global declarations and run main, starting again from
+     * scratch each time.
+     * @throws IllegalStateException if calls are nested too deeply for the
+     *         Java stack
+     */
+    public void run() {
+        Arrays.fill(globals, 0);
+        fp = sp = 0;
+        steps = calls = 0;
+        try {
+            if (globalsNode >= 0)
+                declare(globalsNode);
+            reserve(slots[mainNode]);
+            sp = slots[mainNode];
+            declare(values[mainNode]);
+            block(tree.next(values[mainNode]));
+        } catch (StackOverflowError e) {
+            throw new IllegalStateException("Calls nested too deeply for the stack, after " + calls + " calls.");
+        }
+    }
+
+    /** Make sure the frame stack has room for top ints. */
+    private void reserve(int top) {
+        if (top > stack.length)
+            stack = Arrays.copyOf(stack, Math.max(top, stack.length * 2));
+    }
+
+    /** Run the declarations in DECLS node n. */
+    private void declare(int n) {
+        for (int d = tree.firstChild(n); d >= 0; d = tree.next(d)) {
+            steps++;
+            store(slots[d], ops[d] == CALTree.CONST_DECL ? eval(tree.next(tree.firstChild(d))) : 0);
+        }
+    }
+
+    /** Run the statements of BLOCK node n. */
+    private void block(int n) {
+        boolean elseDue = false;
+        for (int s = tree.firstChild(n); s >= 0; s = tree.next(s)) {
+            steps++;
+            switch (ops[s]) {
+            case CALTree.ASSIGN:
+                store(slots[s], eval(tree.firstChild(s)));
+                elseDue = false;
+                break;
+            case CALTree.CALL:
+                eval(s);
+                elseDue = false;
+                break;
+            case CALTree.IF: {
+                int condition = tree.firstChild(s);
+                elseDue = eval(condition) == 0;
+                if (!elseDue)
+                    block(tree.next(condition));
+                break;
+            }
+            case CALTree.ELSE:
+                if (elseDue)
+                    block(tree.firstChild(s));
+                elseDue = false;
+                break;
+            case CALTree.WHILE: {
+                int condition = tree.firstChild(s), body = tree.next(condition);
+                while (eval(condition) != 0)
+                    block(body);
+                elseDue = false;
+                break;
+            }
+            case CALTree.BLOCK:
+                block(s);
+                elseDue = false;
+                break;
+            default:
+                elseDue = false;
+                break;
+            }
+        }
+    }
+
+    /** @return the value of expression or condition n */
+    private int eval(int n) {
+        steps++;
+        switch (ops[n]) {
+        case LITERAL:
+            return values[n];
+        case CALTree.VAR:
+            return load(slots[n]);
+        case CALTree.NEG:
+            return -load(slots[tree.firstChild(n)]);
+        case ADD: {
+            int left = tree.firstChild(n);
+            return eval(left) + eval(tree.next(left));
+        }
+        case SUB: {
+            int left = tree.firstChild(n);
+            return eval(left) - eval(tree.next(left));
+        }
+        case CALTree.AND: {
+            int left = tree.firstChild(n);
+            return eval(left) != 0 ? eval(tree.next(left)) : 0;
+        }
+        case CALTree.OR: {
+            int left = tree.firstChild(n);
+            return eval(left) != 0 ? 1 : eval(tree.next(left));
+        }
+        case CALTree.NOT:
+            return 1 - eval(tree.firstChild(n));
+        case CALTree.CALL:
+            return call(n);
+        default:
+            return compare(n);
+        }
+    }
+
+    private int compare(int n) {
+        int left = tree.firstChild(n);
+        int a = eval(left), b = eval(tree.next(left));
+        boolean result;
+        switch (ops[n]) {
+        case EQ:
+            result = a == b;
+            break;
+        case NE:
+            result = a != b;
+            break;
+        case LT:
+            result = a < b;
+            break;
+        case LE:
+            result = a <= b;
+            break;
+        case GT:
+            result = a > b;
+            break;
+        default:
+            result = a >= b;
+            break;
+        }
+        return result ? 1 : 0;
+    }
+
+    /** Call the function of CALL node n. @return what it returns, or 0 for void */
+    private int call(int n) {
+        calls++;
+        int f = slots[n];
+        int frame = sp;
+        reserve(frame + slots[f]);
+        // Arguments are identifiers, so evaluating them pushes nothing
+        int i = frame;
+        for (int arg = tree.firstChild(n); arg >= 0; arg = tree.next(arg))
+            stack[i++] = eval(arg);
+        int caller = fp;
+        fp = frame;
+        sp = frame + slots[f];
+        int decls = values[f], body = tree.next(decls), ret = tree.next(body);
+        declare(decls);
+        block(body);
+        int value = tree.firstChild(ret) < 0 ? 0 : eval(tree.firstChild(ret));
+        sp = fp;
+        fp = caller;
+        return value;
+    }
+
+    private int load(int slot) {
+        return slot >= 0 ? stack[fp + slot] : globals[~slot];
+    }
+
+    private void store(int slot, int value) {
+        if (slot >= 0)
+            stack[fp + slot] = value;
+        else
+            globals[~slot] = value;
+    }
+
+    /** @return the value global VAR_DECL or CONST_DECL node d was left with by run() */
+    public int global(int d) {
+        if (slots[d] >= 0 || ops[d] != CALTree.VAR_DECL && ops[d] != CALTree.CONST_DECL)
+            throw new IllegalArgumentException("node " + d + " is not a global declaration");
+        return globals[~slots[d]];
+    }
+
+    /** @return the global declarations, in order */
+    public List<Integer> globals() {
+        List<Integer> decls = new ArrayList<Integer>();
+        if (globalsNode >= 0)
+            for (int d = tree.firstChild(globalsNode); d >= 0; d = tree.next(d))
+                decls.add(d);
+        return decls;
+    }
+
+    /** @return the declarations, statements, expressions and conditions the last run() ran */
+    public long steps() {
+        return steps;
+    }
+
+    /** @return the function calls the last run() made */
+    public long calls() {
+        return calls;
+    }
+
+    /** @return the constants the interpreter was loaded from */
+    public CALConstants constants() {
+        return constants;
+    }
+
+    /** Exit status when the program fails while running, as CALBatch numbers the others. */
+    public static final int EXIT_RUNTIME = 3;
+
+    private static final Pattern POSITION = Pattern.compile("at line ([0-9]+), column ([0-9]+)");
+
+    /** @return the first position message gives, as line and column in one long */
+    private static long position(String message) {
+        Matcher m = POSITION.matcher(message);
+        return m.find() ? Long.parseLong(m.group(1)) << 32 | Long.parseLong(m.group(2)) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Run the program in the given file and print the values its globals
+     * are left with, or its errors. The exit status is CALBatch.EXIT_OK,
+     * EXIT_SYNTAX for a program with errors, EXIT_IO or EXIT_RUNTIME.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("CAL Interpreter: Usage is");
+            System.err.println("    java CALInterpreter file.cal");
+            System.err.println("OR");
+            System.err.println("    java CALParser --run file.cal");
+            System.exit(CALBatch.EXIT_IO);
+        }
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(Paths.get(args[0]));
+        } catch (java.io.IOException e) {
+            System.err.println("File " + args[0] + " not found.");
+            System.exit(CALBatch.EXIT_IO);
+            return;
+        }
+        CALTree tree;
+        try {
+            tree = CALTree.parse(MappedCharStream.decode(bytes));
+        } catch (ParseException | TokenMgrError e) {
+            System.out.println(e.getMessage());
+            System.exit(CALBatch.EXIT_SYNTAX);
+            return;
+        }
+        CALSymbols symbols = CALSymbols.resolve(tree);
+        CALTypes types = CALTypes.check(symbols, 1);
+        CALConstants constants = CALConstants.fold(types);
+        List<String> errors = new ArrayList<String>(symbols.errors());
+        errors.addAll(types.errors());
+        errors.addAll(constants.errors());
+        // Each pass reports in its own order; print them all in source order
+        errors.sort(Comparator.comparingLong(CALInterpreter::position));
+        if (!errors.isEmpty()) {
+            for (String error : errors)
+                System.out.println(error);
+            System.exit(CALBatch.EXIT_SYNTAX);
+        }
+
+        CALInterpreter interpreter = load(constants);
+        Throwable[] failure = new Throwable[1];
+        // Recursion in the program is recursion here, so give it room
+        Thread running = new Thread(null, () -> {
+            try {
+                interpreter.run();
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "cal-run", 1L << 30);
+        running.start();
+        running.join();
+        if (failure[0] instanceof IllegalStateException) {
+            System.out.println(failure[0].getMessage());
+            System.exit(EXIT_RUNTIME);
+        } else if (failure[0] != null) {
+            // Not one of the program's own failures, whose message may well be null
+            System.out.println(failure[0]);
+            System.exit(EXIT_RUNTIME);
+        }
+        for (int d : interpreter.globals()) {
+            int value = interpreter.global(d);
+            boolean bool = types.type(tree.firstChild(d)) == CALTypes.BOOLEAN;
+            System.out.println(tree.image(d) + " = " + (bool ? String.valueOf(value != 0) : String.valueOf(value)));
+        }
+    }
+}
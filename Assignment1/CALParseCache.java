@@ -0,0 +1,352 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An on-disk cache of parse outcomes, keyed by a hash of the source text
+ * and the parser version.
+ *
+ * An entry holds either the tokens and CALTree of a source that parses, or
+ * enough of the ParseException of one that does not to throw the same
+ * exception, with the same message, again. On a hit the source is neither
+ * lexed nor parsed: the arrays are read back and images are sliced out of
+ * the source when asked for, as usual.
+ *
+ * Entries are files in a two-level directory tree under the cache
+ * directory. When their total size passes the limit the least recently
+ * used are deleted; recency survives between runs as the files' modified
+ * times. The cache is safe to share between threads, and between processes
+ * as far as each entry is written to a temporary file and moved into place.
+ * Each entry ends with a CRC-32C of the rest. Any trouble reading or
+ * writing an entry, including an entry that is truncated or corrupt, is
+ * treated as a miss, and the entry is written again.
+ */
+public class CALParseCache {
+
+    /**
+     * Changes whenever the grammar, the tree or the entry layout does, so
+     * that entries from another version of the parser are never used.
+     */
+    public static final String PARSER_VERSION = "cal-tree-3";
+
+    private static final int MAGIC = 0x43414c43;
+    private static final long VERSION_SEED = hash(PARSER_VERSION.getBytes(StandardCharsets.US_ASCII), 0)[0];
+
+    private final Path dir;
+    private final long maxBytes;
+    /** Entry sizes by file, least recently used first. */
+    private final LinkedHashMap<Path, Long> entries = new LinkedHashMap<Path, Long>(1024, 0.75f, true);
+    private long totalBytes = 0;
+    /**
+     * Entries whose modified time has been brought up to date since the
+     * cache was opened. Once is enough to order them after the entries
+     * left alone, and saves a system call on every other hit.
+     */
+    private final java.util.Set<Path> touched = new java.util.HashSet<Path>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /** Open the cache in dir, creating it if need be, holding at most maxBytes of entries. */
+    public CALParseCache(Path dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+        List<Path> found = new ArrayList<Path>();
+        try (DirectoryStream<Path> subdirs = Files.newDirectoryStream(dir)) {
+            for (Path sub : subdirs)
+                if (Files.isDirectory(sub))
+                    try (DirectoryStream<Path> files = Files.newDirectoryStream(sub)) {
+                        for (Path f : files)
+                            found.add(f);
+                    }
+        }
+        // Oldest first, so the map starts out in least recently used order
+        final Map<Path, FileTime> times = new java.util.HashMap<Path, FileTime>();
+        for (Path f : found)
+            times.put(f, Files.getLastModifiedTime(f));
+        found.sort((a, b) -> times.get(a).compareTo(times.get(b)));
+        for (Path f : found) {
+            long size = Files.size(f);
+            entries.put(f, size);
+            totalBytes += size;
+        }
+        evict();
+    }
+
+    /**
+     * Parse source, or take the outcome from the cache.
+     * @return the tree of source, over tokens whose images come from source
+     * @throws ParseException the exception CALTree.parse() throws for source
+     * @throws TokenMgrError if a unicode escape in source is cut short
+     */
+    public CALTree parse(byte[] source) throws ParseException {
+        long[] h = hash(source, VERSION_SEED);
+        String key = hex(h[0]) + hex(h[1]);
+        Path file = dir.resolve(key.substring(0, 2)).resolve(key.substring(2));
+        MappedCharStream stream = MappedCharStream.decode(source);
+
+        byte[] entry = read(file);
+        if (entry != null) {
+            ParseException failed = null;
+            CALTree tree = null;
+            try {
+                ByteBuffer in = ByteBuffer.wrap(entry, 0, entry.length - 4);
+                if (checksum(entry, entry.length - 4) == ByteBuffer.wrap(entry, entry.length - 4, 4).getInt()
+                    && in.getInt() == MAGIC && PARSER_VERSION.equals(string(in)) && in.getInt() == source.length) {
+                    if (in.get() != 0)
+                        failed = readException(in);
+                    else
+                        tree = CALTree.read(in, TokenBuffer.read(in, stream));
+                }
+            } catch (RuntimeException corrupt) {
+                // Truncated or damaged: parse again, and the entry is rewritten
+            }
+            if (failed != null || tree != null) {
+                hits.incrementAndGet();
+                if (failed != null)
+                    throw failed;
+                return tree;
+            }
+        }
+
+        misses.incrementAndGet();
+        TokenBuffer tokens = new TokenBuffer();
+        tokens.fill(stream);
+        try {
+            CALTree tree = CALTree.parse(tokens, stream);
+            ByteBuffer out = header(source, 1 + tokens.serializedSize() + tree.serializedSize(), (byte) 0);
+            tokens.write(out);
+            tree.write(out);
+            write(file, out);
+            return tree;
+        } catch (ParseException e) {
+            write(file, writeException(source, e));
+            throw e;
+        }
+    }
+
+    /** @return the number of parses answered from the cache */
+    public long hits() {
+        return hits.get();
+    }
+
+    /** @return the number of parses the cache could not answer */
+    public long misses() {
+        return misses.get();
+    }
+
+    /** @return the number of entries deleted to keep within the size limit */
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /** @return the total size of the entries, in bytes */
+    public synchronized long size() {
+        return totalBytes;
+    }
+
+    private byte[] read(Path file) {
+        boolean touch;
+        synchronized (this) {
+            if (entries.get(file) == null)
+                return null;
+            touch = touched.add(file);
+        }
+        try {
+            byte[] entry = Files.readAllBytes(file);
+            if (touch)
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return entry;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void write(Path file, ByteBuffer out) {
+        out.putInt(checksum(out.array(), out.position()));
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), "entry", ".tmp");
+            Files.write(temp, java.util.Arrays.copyOf(out.array(), out.position()));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            return;
+        }
+        synchronized (this) {
+            Long old = entries.put(file, (long) out.position());
+            touched.add(file);
+            totalBytes += out.position() - (old == null ? 0 : old);
+            evict();
+        }
+    }
+
+    private synchronized void evict() {
+        Iterator<Map.Entry<Path, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<Path, Long> e = eldest.next();
+            try {
+                Files.deleteIfExists(e.getKey());
+            } catch (IOException ignored) {
+                // Counted as gone: a later write will replace it
+            }
+            totalBytes -= e.getValue();
+            touched.remove(e.getKey());
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static ByteBuffer header(byte[] source, int body, byte outcome) {
+        ByteBuffer out = ByteBuffer.allocate(4 + 5 + PARSER_VERSION.length() + 4 + body + 4);
+        out.putInt(MAGIC);
+        putString(out, PARSER_VERSION);
+        out.putInt(source.length);
+        out.put(outcome);
+        return out;
+    }
+
+    /**
+     * The exception's expected token sequences and the tokens its message
+     * is made from: the current token and the ones after it, as far as the
+     * longest expected sequence reaches.
+     */
+    private static ByteBuffer writeException(byte[] source, ParseException e) {
+        int longest = 0;
+        for (int[] sequence : e.expectedTokenSequences)
+            longest = Math.max(longest, sequence.length);
+        List<Token> chain = new ArrayList<Token>();
+        for (Token t = e.currentToken; t != null && chain.size() <= longest; t = t.next)
+            chain.add(t);
+
+        int body = 1 + 4;
+        for (int[] sequence : e.expectedTokenSequences)
+            body += 4 + 4 * sequence.length;
+        body += 4;
+        for (Token t : chain)
+            body += 20 + 5 + 3 * t.image().length();
+        ByteBuffer out = header(source, body, (byte) 1);
+        out.putInt(e.expectedTokenSequences.length);
+        for (int[] sequence : e.expectedTokenSequences) {
+            out.putInt(sequence.length);
+            for (int kind : sequence)
+                out.putInt(kind);
+        }
+        out.putInt(chain.size());
+        for (Token t : chain) {
+            out.putInt(t.kind);
+            out.putInt(t.beginLine);
+            out.putInt(t.beginColumn);
+            out.putInt(t.endLine);
+            out.putInt(t.endColumn);
+            putString(out, t.image());
+        }
+        return out;
+    }
+
+    private static ParseException readException(ByteBuffer in) {
+        int[][] expected = new int[count(in, 4)][];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = new int[count(in, 4)];
+            for (int j = 0; j < expected[i].length; j++)
+                expected[i][j] = in.getInt();
+        }
+        Token first = null, last = null;
+        for (int n = count(in, 21); n > 0; n--) {
+            Token t = Token.newToken(in.getInt());
+            t.beginLine = in.getInt();
+            t.beginColumn = in.getInt();
+            t.endLine = in.getInt();
+            t.endColumn = in.getInt();
+            t.image = string(in);
+            if (first == null)
+                first = t;
+            else
+                last.next = t;
+            last = t;
+        }
+        return new ParseException(first, expected, CALParserConstants.tokenImage);
+    }
+
+    private static int checksum(byte[] data, int length) {
+        java.util.zip.CRC32C crc = new java.util.zip.CRC32C();
+        crc.update(data, 0, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * @return a count read from in of things at least size bytes long each
+     * @throws IllegalArgumentException if in cannot hold that many
+     */
+    private static int count(ByteBuffer in, int size) {
+        int n = in.getInt();
+        if (n < 0 || n > in.remaining() / size)
+            throw new IllegalArgumentException("bad count " + n);
+        return n;
+    }
+
+    private static String hex(long value) {
+        String digits = Long.toHexString(value);
+        return "0000000000000000".substring(digits.length()) + digits;
+    }
+
+    private static void putString(ByteBuffer out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        TokenBuffer.putVarint(out, bytes.length);
+        out.put(bytes);
+    }
+
+    private static String string(ByteBuffer in) {
+        int length = TokenBuffer.getVarint(in);
+        if (length < 0 || length > in.remaining())
+            throw new IllegalArgumentException("bad string length " + length);
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A 128-bit hash of data, as two longs, reading it eight bytes at a
+     * time. Not cryptographic, but a chance collision between two of a few
+     * million sources is vanishingly unlikely.
+     */
+    static long[] hash(byte[] data, long seed) {
+        final long m1 = 0x87c37b91114253d5L, m2 = 0x4cf5ad432745937fL;
+        long h1 = seed ^ data.length, h2 = ~seed ^ data.length;
+        ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        int i = 0;
+        for (; i + 8 <= data.length; i += 8) {
+            long k = buf.getLong(i);
+            h1 = Long.rotateLeft(h1 ^ k * m1, 27) * 5 + 0x52dce729;
+            h2 = Long.rotateLeft(h2 ^ k * m2, 31) * 5 + 0x38495ab5;
+        }
+        long k = 0;
+        for (int shift = 0; i < data.length; i++, shift += 8)
+            k |= (data[i] & 0xffL) << shift;
+        h1 = fmix(h1 ^ k * m1 + h2);
+        h2 = fmix(h2 ^ k * m2 + h1);
+        return new long[] { h1, h2 };
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -1,8 +1,216 @@
 /* Generated By:JavaCC: Do not edit this line. CALParser.java */
 public class CALParser implements CALParserConstants {
 
+    /** Constructor with InputStream, read through a JavaCharStream. */
+    public CALParser(java.io.InputStream stream) {
+        this(new JavaCharStream(stream));
+    }
+
+    /** Constructor with Reader, read through a JavaCharStream. */
+    public CALParser(java.io.Reader stream) {
+        this(new JavaCharStream(stream));
+    }
+
+    /*
+     * The two places the grammar needs a second token of lookahead decide
+     * on a fixed window of two tokens. They accept exactly what LOOKAHEAD(2)
+     * did, without the generated scan routines and their LookaheadSuccess
+     * exception.
+     */
+
+    /** "(" followed by what can start an arg_list or close it. */
+    private boolean callFollows() {
+        if (getToken(1).kind != LBR)
+            return false;
+        int next = getToken(2).kind;
+        return next == ID || next == RBR;
+    }
+
+    /** "(" followed by what can start a condition. */
+    private boolean bracketedConditionFollows() {
+        if (getToken(1).kind != LBR)
+            return false;
+        switch (getToken(2).kind) {
+        case NOT:
+        case LBR:
+        case ID:
+        case MINUS:
+        case NUMBER:
+        case TRUE:
+        case FALSE:
+        case BEGIN:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /** Errors collected by programWithRecovery(), or null when not recovering. */
+    private java.util.List<ParseException> errors;
+
+    /**
+     * Parse a program, recovering from syntax errors instead of stopping at
+     * the first. After an error the parser skips ahead to a point where it
+     * can carry on: past the next ";" in a declaration or statement, or up
+     * to the next "end", "begin", statement keyword, declaration, function
+     * header or "main". Every skip either consumes tokens or hands control
+     * back to an enclosing production that does, so the time taken stays
+     * linear in the length of the input however broken it is.
+     * @return the errors found, in order; empty if the program is valid
+     */
+    public java.util.List<ParseException> programWithRecovery() {
+        errors = new java.util.ArrayList<ParseException>();
+        try {
+            program();
+        } catch (ParseException e) {
+            // Not thrown while recovering, but program() declares it
+            errors.add(e);
+        }
+        java.util.List<ParseException> found = errors;
+        errors = null;
+        return found;
+    }
+
+    /** Keep e, unless an enclosing production already gave up on the same token. */
+    private void record(ParseException e) throws ParseException {
+        if (errors == null)
+            throw e;
+        if (errors.isEmpty() || errors.get(errors.size() - 1).currentToken.next != e.currentToken.next)
+            errors.add(e);
+    }
+
+    /** After an error in a declaration, skip past its ";" or up to a token that starts something else. */
+    private void skipDeclaration(ParseException e) throws ParseException {
+        record(e);
+        for (;;) {
+            switch (getToken(1).kind) {
+            case SEMIC:
+                getNextToken();
+                return;
+            case EOF:
+            case VARIABLE:
+            case CONSTANT:
+            case BEGIN:
+            case MAIN:
+                return;
+            default:
+                if (functionFollows())
+                    return;
+                getNextToken();
+            }
+        }
+    }
+
+    /** After an error in a function, skip up to the next function header or "main". */
+    private void skipFunction(ParseException e) throws ParseException {
+        record(e);
+        while (getToken(1).kind != EOF && getToken(1).kind != MAIN && !functionFollows())
+            getNextToken();
+    }
+
+    /** After an error in a statement, skip past its ";" or up to a token that starts or ends a block. */
+    private void skipStatement(ParseException e) throws ParseException {
+        record(e);
+        for (;;) {
+            switch (getToken(1).kind) {
+            case SEMIC:
+                getNextToken();
+                return;
+            case EOF:
+            case END:
+            case BEGIN:
+            case IF:
+            case ELSE:
+            case WHILE:
+            case SKP:
+                return;
+            default:
+                getNextToken();
+            }
+        }
+    }
+
+    /**
+     * After an error in main. If "main" itself was missing, skip to the
+     * next "main" and parse from there. Otherwise the error is a token that
+     * can neither start a statement nor end the block: skip to one that
+     * can and carry on with the statements, as often as it takes.
+     * @param start the last token before main() began
+     */
+    private void skipMain(ParseException e, Token start) throws ParseException {
+        record(e);
+        if (e.currentToken == start) {
+            while (getToken(1).kind != EOF && getToken(1).kind != MAIN)
+                getNextToken();
+            if (getToken(1).kind == MAIN)
+                main();
+            return;
+        }
+        for (;;) {
+            for (;;) {
+                switch (getToken(1).kind) {
+                case EOF:
+                    return;
+                case ID:
+                case BEGIN:
+                case IF:
+                case ELSE:
+                case WHILE:
+                case SKP:
+                case END:
+                    break;
+                default:
+                    getNextToken();
+                    continue;
+                }
+                break;
+            }
+            try {
+                main_body();
+                return;
+            } catch (ParseException again) {
+                record(again);
+            }
+        }
+    }
+
+    /** A type, an identifier and "(": the start of a function. */
+    private boolean functionFollows() {
+        switch (getToken(1).kind) {
+        case INTEGER:
+        case BOOLEAN:
+        case VOID:
+            return getToken(2).kind == ID && getToken(3).kind == LBR;
+        default:
+            return false;
+        }
+    }
+
     public static void main(String[] args) {
 
+        // Stay up and parse for clients, see CALServer
+        if (args.length > 0 && args[0].equals("--server")) {
+            try {
+                CALServer.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            } catch (java.io.IOException e) {
+                System.err.println(e.getMessage());
+                System.exit(CALBatch.EXIT_IO);
+            }
+            return;
+        }
+
+        // Run the program instead of only checking it, see CALInterpreter,
+        // which takes exactly one file and gives its usage otherwise
+        if (args.length > 0 && args[0].equals("--run")) {
+            try {
+                CALInterpreter.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            } catch (Exception e) {
+                System.err.println(e.getMessage());
+                System.exit(CALBatch.EXIT_IO);
+            }
+            return;
+        }
+
         // Initialise parser to read
         CALParser parser;
         if (args.length == 0) {
@@ -10,7 +218,7 @@ public class CALParser implements CALParserConstants {
             System.out.println("Reading from standard input...");
             parser = new CALParser(System.in);
 
-        } else if (args.length == 1) {
+        } else if (args.length == 1 && !CALBatch.isBatch(args[0])) {
             try {
                 parser = new CALParser(new java.io.FileInputStream(args[0]));
             } catch (java.io.FileNotFoundException e) {
@@ -20,20 +228,19 @@ public class CALParser implements CALParserConstants {
 
         } else {
 
-            System.out.println("CAL Parser: Usage is one of:");
-            System.out.println("    java CALParser < inputfile");
-            System.out.println("OR");
-            System.out.println("    java CALParser inputfile");
+            // Many files, directories or patterns: parse them all in this JVM
+            System.exit(CALBatch.command(args, System.out, System.err));
             return;
         }
 
 
-    // Parse the file
-    try {
-        parser.program();
+    // Parse the file, reporting every syntax error in it
+    java.util.List<ParseException> errors = parser.programWithRecovery();
+    if (errors.isEmpty()) {
         System.out.println("Parsed successfully.");
-    } catch (ParseException e) {
-        System.out.println(e.getMessage());
+    } else {
+        for (ParseException e : errors)
+            System.out.println(e.getMessage());
         System.out.println("Encountered errors during parse.");
         }
     }
@@ -41,27 +248,34 @@ public class CALParser implements CALParserConstants {
 /***********************************
 ***** SECTION 4 - THE GRAMMAR *****
 ***********************************/
-  static final public void program() throws ParseException {
+  final public void program() throws ParseException {
     decl_list();
     function_list();
     main();
   }
 
-  static final public void decl_list() throws ParseException {
-    switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
-    case VARIABLE:
-    case CONSTANT:
-      decl();
-      jj_consume_token(SEMIC);
-      decl_list();
-      break;
-    default:
-      jj_la1[0] = jj_gen;
-      ;
+  final public void decl_list() throws ParseException {
+    label_1:
+    while (true) {
+      switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
+      case VARIABLE:
+      case CONSTANT:
+        ;
+        break;
+      default:
+        jj_la1[0] = jj_gen;
+        break label_1;
+      }
+      try {
+        decl();
+        jj_consume_token(SEMIC);
+      } catch (ParseException e) {
+            skipDeclaration(e);
+      }
     }
   }
 
-  static final public void decl() throws ParseException {
+  final public void decl() throws ParseException {
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
     case VARIABLE:
       var_decl();
@@ -76,14 +290,14 @@ public class CALParser implements CALParserConstants {
     }
   }
 
-  static final public void var_decl() throws ParseException {
+  final public void var_decl() throws ParseException {
     jj_consume_token(VARIABLE);
     jj_consume_token(ID);
     jj_consume_token(COLON);
     type();
   }
 
-  static final public void const_decl() throws ParseException {
+  final public void const_decl() throws ParseException {
     jj_consume_token(CONSTANT);
     jj_consume_token(ID);
     jj_consume_token(COLON);
@@ -92,21 +306,28 @@ public class CALParser implements CALParserConstants {
     expression();
   }
 
-  static final public void function_list() throws ParseException {
-    switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
-    case INTEGER:
-    case BOOLEAN:
-    case VOID:
-      function();
-      function_list();
-      break;
-    default:
-      jj_la1[2] = jj_gen;
-      ;
+  final public void function_list() throws ParseException {
+    label_2:
+    while (true) {
+      switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
+      case INTEGER:
+      case BOOLEAN:
+      case VOID:
+        ;
+        break;
+      default:
+        jj_la1[2] = jj_gen;
+        break label_2;
+      }
+      try {
+        function();
+      } catch (ParseException e) {
+            skipFunction(e);
+      }
     }
   }
 
-  static final public void function() throws ParseException {
+  final public void function() throws ParseException {
     type();
     jj_consume_token(ID);
     jj_consume_token(LBR);
@@ -136,7 +357,7 @@ public class CALParser implements CALParserConstants {
     jj_consume_token(END);
   }
 
-  static final public void type() throws ParseException {
+  final public void type() throws ParseException {
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
     case INTEGER:
       jj_consume_token(INTEGER);
@@ -154,7 +375,7 @@ public class CALParser implements CALParserConstants {
     }
   }
 
-  static final public void parameter_list() throws ParseException {
+  final public void parameter_list() throws ParseException {
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
     case ID:
       nemp_parameter_list();
@@ -165,51 +386,69 @@ public class CALParser implements CALParserConstants {
     }
   }
 
-  static final public void nemp_parameter_list() throws ParseException {
+  final public void nemp_parameter_list() throws ParseException {
     jj_consume_token(ID);
     jj_consume_token(COLON);
     type();
-    nemp_parameter_list_choice();
+    label_3:
+    while (true) {
+      switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
+      case COMMA:
+        ;
+        break;
+      default:
+        jj_la1[6] = jj_gen;
+        break label_3;
+      }
+      jj_consume_token(COMMA);
+      jj_consume_token(ID);
+      jj_consume_token(COLON);
+      type();
+    }
   }
 
-  static final public void nemp_parameter_list_choice() throws ParseException {
-    switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
-    case COMMA:
-      jj_consume_token(COMMA);
-      nemp_parameter_list();
-      break;
-    default:
-      jj_la1[6] = jj_gen;
-      ;
+  final public void main() throws ParseException {
+                Token start = token;
+    try {
+      jj_consume_token(MAIN);
+      jj_consume_token(BEGIN);
+      decl_list();
+      main_body();
+    } catch (ParseException e) {
+        skipMain(e, start);
     }
   }
 
-  static final public void main() throws ParseException {
-    jj_consume_token(MAIN);
-    jj_consume_token(BEGIN);
-    decl_list();
+  final public void main_body() throws ParseException {
     statement_block();
     jj_consume_token(END);
   }
 
-  static final public void statement_block() throws ParseException {
-    switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
-    case IF:
-    case ELSE:
-    case WHILE:
-    case SKP:
-    case BEGIN:
-    case ID:
-      statement();
-      statement_block();
-      break;
-    default:
-      jj_la1[7] = jj_gen;
-      ;
+  final public void statement_block() throws ParseException {
+    label_4:
+    while (true) {
+      switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
+      case IF:
+      case ELSE:
+      case WHILE:
+      case SKP:
+      case BEGIN:
+      case ID:
+        ;
+        break;
+      default:
+        jj_la1[7] = jj_gen;
+        break label_4;
+      }
+      try {
+        statement();
+      } catch (ParseException e) {
+            skipStatement(e);
+      }
     }
   }
 
-  static final public void statement() throws ParseException {
+  final public void statement() throws ParseException {
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
     case ID:
       jj_consume_token(ID);
@@ -251,7 +490,7 @@ public class CALParser implements CALParserConstants {
     }
   }
 
-  static final public void statement_choice() throws ParseException {
+  final public void statement_choice() throws ParseException {
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
     case ASSIGN:
       jj_consume_token(ASSIGN);
@@ -271,21 +510,31 @@ public class CALParser implements CALParserConstants {
     }
   }
 
-  static final public void expression() throws ParseException {
+/*
+ * Operators are parsed by precedence climbing: one production per level,
+ * each looping over its operands, so a chain of any length is read
+ * without recursion and groups to the left. From loosest to tightest:
+ * "|", "&", "~", the comparisons, then "+" and "-".
+ */
+  final public void expression() throws ParseException {
     fragment();
-    switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
-    case PLUS:
-    case MINUS:
+    label_5:
+    while (true) {
+      switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
+      case PLUS:
+      case MINUS:
+        ;
+        break;
+      default:
+        jj_la1[10] = jj_gen;
+        break label_5;
+      }
       binary_arith_op();
       fragment();
-      break;
-    default:
-      jj_la1[10] = jj_gen;
-      ;
     }
   }
 
-  static final public void binary_arith_op() throws ParseException {
+  final public void binary_arith_op() throws ParseException {
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
     case PLUS:
       jj_consume_token(PLUS);
@@ -300,11 +549,11 @@ public class CALParser implements CALParserConstants {
     }
   }
 
-  static final public void fragment() throws ParseException {
+  final public void fragment() throws ParseException {
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
     case ID:
       jj_consume_token(ID);
-      if (jj_2_1(2)) {
+      if (callFollows()) {
         jj_consume_token(LBR);
         arg_list();
         jj_consume_token(RBR);
@@ -337,36 +586,49 @@ public class CALParser implements CALParserConstants {
     }
   }
 
-  static final public void condition() throws ParseException {
-    condition_simple();
-    condition_choice();
+  final public void condition() throws ParseException {
+    conjunction();
+    label_6:
+    while (true) {
+      switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
+      case OR:
+        ;
+        break;
+      default:
+        jj_la1[13] = jj_gen;
+        break label_6;
+      }
+      jj_consume_token(OR);
+      conjunction();
+    }
   }
 
-  static final public void condition_choice() throws ParseException {
-    switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
-    case AND:
+  final public void conjunction() throws ParseException {
+    condition_simple();
+    label_7:
+    while (true) {
+      switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
+      case AND:
+        ;
+        break;
+      default:
+        jj_la1[14] = jj_gen;
+        break label_7;
+      }
       jj_consume_token(AND);
-      condition();
-      break;
-    case OR:
-      jj_consume_token(OR);
-      condition();
-      break;
-    default:
-      jj_la1[13] = jj_gen;
-
+      condition_simple();
     }
   }
 
-  static final public void condition_simple() throws ParseException {
+  final public void condition_simple() throws ParseException {
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
     case NOT:
       jj_consume_token(NOT);
-      condition();
+      condition_simple();
       break;
     default:
-      jj_la1[14] = jj_gen;
-      if (jj_2_2(2)) {
+      jj_la1[15] = jj_gen;
+      if (bracketedConditionFollows()) {
         jj_consume_token(LBR);
         condition();
         jj_consume_token(RBR);
@@ -383,7 +645,7 @@ public class CALParser implements CALParserConstants {
           expression();
           break;
         default:
-          jj_la1[15] = jj_gen;
+          jj_la1[16] = jj_gen;
           jj_consume_token(-1);
           throw new ParseException();
         }
@@ -391,7 +653,7 @@ public class CALParser implements CALParserConstants {
     }
   }
 
-  static final public void comp_op() throws ParseException {
+  final public void comp_op() throws ParseException {
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
     case EQUAL:
       jj_consume_token(EQUAL);
@@ -412,163 +674,49 @@ public class CALParser implements CALParserConstants {
       jj_consume_token(GREATER_THAN_EQUAL_TO);
       break;
     default:
-      jj_la1[16] = jj_gen;
+      jj_la1[17] = jj_gen;
       jj_consume_token(-1);
       throw new ParseException();
     }
   }
 
-  static final public void arg_list() throws ParseException {
+  final public void arg_list() throws ParseException {
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
     case ID:
       nemp_arg_list();
       break;
     default:
-      jj_la1[17] = jj_gen;
+      jj_la1[18] = jj_gen;
       ;
     }
   }
 
-  static final public void nemp_arg_list() throws ParseException {
+  final public void nemp_arg_list() throws ParseException {
     jj_consume_token(ID);
-    switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
-    case COMMA:
+    label_8:
+    while (true) {
+      switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
+      case COMMA:
+        ;
+        break;
+      default:
+        jj_la1[19] = jj_gen;
+        break label_8;
+      }
       jj_consume_token(COMMA);
-      nemp_arg_list();
-      break;
-    default:
-      jj_la1[18] = jj_gen;
-      ;
-    }
-  }
-
-  static private boolean jj_2_1(int xla) {
-    jj_la = xla; jj_lastpos = jj_scanpos = token;
-    try { return !jj_3_1(); }
-    catch(LookaheadSuccess ls) { return true; }
-    finally { jj_save(0, xla); }
-  }
-
-  static private boolean jj_2_2(int xla) {
-    jj_la = xla; jj_lastpos = jj_scanpos = token;
-    try { return !jj_3_2(); }
-    catch(LookaheadSuccess ls) { return true; }
-    finally { jj_save(1, xla); }
-  }
-
-  static private boolean jj_3R_8() {
-    if (jj_3R_9()) return true;
-    return false;
-  }
-
-  static private boolean jj_3_1() {
-    if (jj_scan_token(LBR)) return true;
-    if (jj_3R_1()) return true;
-    if (jj_scan_token(RBR)) return true;
-    return false;
-  }
-
-  static private boolean jj_3R_12() {
-    if (jj_scan_token(BEGIN)) return true;
-    return false;
-  }
-
-  static private boolean jj_3R_7() {
-    if (jj_3R_8()) return true;
-    return false;
-  }
-
-  static private boolean jj_3R_11() {
-    if (jj_scan_token(MINUS)) return true;
-    return false;
-  }
-
-  static private boolean jj_3_2() {
-    if (jj_scan_token(LBR)) return true;
-    if (jj_3R_2()) return true;
-    return false;
-  }
-
-  static private boolean jj_3R_10() {
-    if (jj_scan_token(ID)) return true;
-    return false;
-  }
-
-  static private boolean jj_3R_9() {
-    Token xsp;
-    xsp = jj_scanpos;
-    if (jj_3R_10()) {
-    jj_scanpos = xsp;
-    if (jj_3R_11()) {
-    jj_scanpos = xsp;
-    if (jj_scan_token(45)) {
-    jj_scanpos = xsp;
-    if (jj_scan_token(20)) {
-    jj_scanpos = xsp;
-    if (jj_scan_token(21)) {
-    jj_scanpos = xsp;
-    if (jj_3R_12()) return true;
-    }
-    }
-    }
-    }
-    }
-    return false;
-  }
-
-  static private boolean jj_3R_4() {
-    Token xsp;
-    xsp = jj_scanpos;
-    if (jj_3R_6()) {
-    jj_scanpos = xsp;
-    if (jj_3_2()) {
-    jj_scanpos = xsp;
-    if (jj_3R_7()) return true;
-    }
+      jj_consume_token(ID);
     }
-    return false;
-  }
-
-  static private boolean jj_3R_6() {
-    if (jj_scan_token(NOT)) return true;
-    return false;
-  }
-
-  static private boolean jj_3R_5() {
-    if (jj_scan_token(ID)) return true;
-    return false;
   }
 
-  static private boolean jj_3R_3() {
-    if (jj_3R_5()) return true;
-    return false;
-  }
-
-  static private boolean jj_3R_1() {
-    Token xsp;
-    xsp = jj_scanpos;
-    if (jj_3R_3()) jj_scanpos = xsp;
-    return false;
-  }
-
-  static private boolean jj_3R_2() {
-    if (jj_3R_4()) return true;
-    return false;
-  }
-
-  static private boolean jj_initialized_once = false;
   /** Generated Token Manager. */
-  static public CALParserTokenManager token_source;
-  static JavaCharStream jj_input_stream;
+  public CALParserTokenManager token_source;
   /** Current token. */
-  static public Token token;
+  public Token token;
   /** Next token. */
-  static public Token jj_nt;
-  static private int jj_ntk;
-  static private Token jj_scanpos, jj_lastpos;
-  static private int jj_la;
-  static private int jj_gen;
-  static final private int[] jj_la1 = new int[19];
+  public Token jj_nt;
+  private int jj_ntk;
+  private int jj_gen;
+  final private int[] jj_la1 = new int[20];
   static private int[] jj_la1_0;
   static private int[] jj_la1_1;
   static {
@@ -576,96 +724,37 @@ public class CALParser implements CALParserConstants {
       jj_la1_init_1();
    }
    private static void jj_la1_init_0() {
-      jj_la1_0 = new int[] {0x1800,0x1800,0x1c000,0x10300000,0x1c000,0x0,0x1000000,0x10cc0000,0x10cc0000,0x88000000,0x0,0x0,0x10300000,0x0,0x0,0x10300000,0x0,0x0,0x1000000,};
+      jj_la1_0 = new int[] {0x300,0x300,0x3800,0x82060000,0x3800,0x0,0x200000,0x2198000,0x2198000,0x11000000,0xc0000000,0xc0000000,0x82060000,0x0,0x0,0x0,0x82060000,0x0,0x0,0x200000,};
    }
    private static void jj_la1_init_1() {
-      jj_la1_1 = new int[] {0x0,0x0,0x0,0xa004,0x0,0x8000,0x0,0x8000,0x8000,0x0,0x6,0x6,0xa004,0x30,0x8,0xa004,0xfc0,0x8000,0x0,};
+      jj_la1_1 = new int[] {0x0,0x0,0x0,0x1400,0x0,0x1000,0x0,0x1000,0x1000,0x0,0x0,0x0,0x1400,0x2,0x4,0x1,0x1400,0x1f8,0x1000,0x0,};
    }
-  static final private JJCalls[] jj_2_rtns = new JJCalls[2];
-  static private boolean jj_rescan = false;
-  static private int jj_gc = 0;
-
-  /** Constructor with InputStream. */
-  public CALParser(java.io.InputStream stream) {
-     this(stream, null);
-  }
-  /** Constructor with InputStream and supplied encoding */
-  public CALParser(java.io.InputStream stream, String encoding) {
-    if (jj_initialized_once) {
-      System.out.println("ERROR: Second call to constructor of static parser.  ");
-      System.out.println("       You must either use ReInit() or set the JavaCC option STATIC to false");
-      System.out.println("       during parser generation.");
-      throw new Error();
-    }
-    jj_initialized_once = true;
-    try { jj_input_stream = new JavaCharStream(stream, encoding, 1, 1); } catch(java.io.UnsupportedEncodingException e) { throw new RuntimeException(e); }
-    token_source = new CALParserTokenManager(jj_input_stream);
-    token = new Token();
-    jj_ntk = -1;
-    jj_gen = 0;
-    for (int i = 0; i < 19; i++) jj_la1[i] = -1;
-    for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
-  }
-
-  /** Reinitialise. */
-  static public void ReInit(java.io.InputStream stream) {
-     ReInit(stream, null);
-  }
-  /** Reinitialise. */
-  static public void ReInit(java.io.InputStream stream, String encoding) {
-    try { jj_input_stream.ReInit(stream, encoding, 1, 1); } catch(java.io.UnsupportedEncodingException e) { throw new RuntimeException(e); }
-    token_source.ReInit(jj_input_stream);
-    token = new Token();
-    jj_ntk = -1;
-    jj_gen = 0;
-    for (int i = 0; i < 19; i++) jj_la1[i] = -1;
-    for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
-  }
 
-  /** Constructor. */
-  public CALParser(java.io.Reader stream) {
-    if (jj_initialized_once) {
-      System.out.println("ERROR: Second call to constructor of static parser. ");
-      System.out.println("       You must either use ReInit() or set the JavaCC option STATIC to false");
-      System.out.println("       during parser generation.");
-      throw new Error();
-    }
-    jj_initialized_once = true;
-    jj_input_stream = new JavaCharStream(stream, 1, 1);
-    token_source = new CALParserTokenManager(jj_input_stream);
+  /** Constructor with user supplied CharStream. */
+  public CALParser(CharStream stream) {
+    token_source = new CALParserTokenManager(stream);
     token = new Token();
     jj_ntk = -1;
     jj_gen = 0;
-    for (int i = 0; i < 19; i++) jj_la1[i] = -1;
-    for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
+    for (int i = 0; i < 20; i++) jj_la1[i] = -1;
   }
 
   /** Reinitialise. */
-  static public void ReInit(java.io.Reader stream) {
-    jj_input_stream.ReInit(stream, 1, 1);
-    token_source.ReInit(jj_input_stream);
+  public void ReInit(CharStream stream) {
+    token_source.ReInit(stream);
     token = new Token();
     jj_ntk = -1;
     jj_gen = 0;
-    for (int i = 0; i < 19; i++) jj_la1[i] = -1;
-    for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
+    for (int i = 0; i < 20; i++) jj_la1[i] = -1;
   }
 
   /** Constructor with generated Token Manager. */
   public CALParser(CALParserTokenManager tm) {
-    if (jj_initialized_once) {
-      System.out.println("ERROR: Second call to constructor of static parser. ");
-      System.out.println("       You must either use ReInit() or set the JavaCC option STATIC to false");
-      System.out.println("       during parser generation.");
-      throw new Error();
-    }
-    jj_initialized_once = true;
     token_source = tm;
     token = new Token();
     jj_ntk = -1;
     jj_gen = 0;
-    for (int i = 0; i < 19; i++) jj_la1[i] = -1;
-    for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
+    for (int i = 0; i < 20; i++) jj_la1[i] = -1;
   }
 
   /** Reinitialise. */
@@ -674,27 +763,16 @@ public class CALParser implements CALParserConstants {
     token = new Token();
     jj_ntk = -1;
     jj_gen = 0;
-    for (int i = 0; i < 19; i++) jj_la1[i] = -1;
-    for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
+    for (int i = 0; i < 20; i++) jj_la1[i] = -1;
   }
 
-  static private Token jj_consume_token(int kind) throws ParseException {
+  private Token jj_consume_token(int kind) throws ParseException {
     Token oldToken;
     if ((oldToken = token).next != null) token = token.next;
     else token = token.next = token_source.getNextToken();
     jj_ntk = -1;
     if (token.kind == kind) {
       jj_gen++;
-      if (++jj_gc > 100) {
-        jj_gc = 0;
-        for (int i = 0; i < jj_2_rtns.length; i++) {
-          JJCalls c = jj_2_rtns[i];
-          while (c != null) {
-            if (c.gen < jj_gen) c.first = null;
-            c = c.next;
-          }
-        }
-      }
       return token;
     }
     token = oldToken;
@@ -702,32 +780,9 @@ public class CALParser implements CALParserConstants {
     throw generateParseException();
   }
 
-  static private final class LookaheadSuccess extends java.lang.Error { }
-  static final private LookaheadSuccess jj_ls = new LookaheadSuccess();
-  static private boolean jj_scan_token(int kind) {
-    if (jj_scanpos == jj_lastpos) {
-      jj_la--;
-      if (jj_scanpos.next == null) {
-        jj_lastpos = jj_scanpos = jj_scanpos.next = token_source.getNextToken();
-      } else {
-        jj_lastpos = jj_scanpos = jj_scanpos.next;
-      }
-    } else {
-      jj_scanpos = jj_scanpos.next;
-    }
-    if (jj_rescan) {
-      int i = 0; Token tok = token;
-      while (tok != null && tok != jj_scanpos) { i++; tok = tok.next; }
-      if (tok != null) jj_add_error_token(kind, i);
-    }
-    if (jj_scanpos.kind != kind) return true;
-    if (jj_la == 0 && jj_scanpos == jj_lastpos) throw jj_ls;
-    return false;
-  }
-
 
 /** Get the next Token. */
-  static final public Token getNextToken() {
+  final public Token getNextToken() {
     if (token.next != null) token = token.next;
     else token = token.next = token_source.getNextToken();
     jj_ntk = -1;
@@ -736,7 +791,7 @@ public class CALParser implements CALParserConstants {
   }
 
 /** Get the specific Token. */
-  static final public Token getToken(int index) {
+  final public Token getToken(int index) {
     Token t = token;
     for (int i = 0; i < index; i++) {
       if (t.next != null) t = t.next;
@@ -745,53 +800,26 @@ public class CALParser implements CALParserConstants {
     return t;
   }
 
-  static private int jj_ntk() {
+  private int jj_ntk() {
     if ((jj_nt=token.next) == null)
       return (jj_ntk = (token.next=token_source.getNextToken()).kind);
     else
       return (jj_ntk = jj_nt.kind);
   }
 
-  static private java.util.List<int[]> jj_expentries = new java.util.ArrayList<int[]>();
-  static private int[] jj_expentry;
-  static private int jj_kind = -1;
-  static private int[] jj_lasttokens = new int[100];
-  static private int jj_endpos;
-
-  static private void jj_add_error_token(int kind, int pos) {
-    if (pos >= 100) return;
-    if (pos == jj_endpos + 1) {
-      jj_lasttokens[jj_endpos++] = kind;
-    } else if (jj_endpos != 0) {
-      jj_expentry = new int[jj_endpos];
-      for (int i = 0; i < jj_endpos; i++) {
-        jj_expentry[i] = jj_lasttokens[i];
-      }
-      jj_entries_loop: for (java.util.Iterator<?> it = jj_expentries.iterator(); it.hasNext();) {
-        int[] oldentry = (int[])(it.next());
-        if (oldentry.length == jj_expentry.length) {
-          for (int i = 0; i < jj_expentry.length; i++) {
-            if (oldentry[i] != jj_expentry[i]) {
-              continue jj_entries_loop;
-            }
-          }
-          jj_expentries.add(jj_expentry);
-          break jj_entries_loop;
-        }
-      }
-      if (pos != 0) jj_lasttokens[(jj_endpos = pos) - 1] = kind;
-    }
-  }
+  private java.util.List<int[]> jj_expentries = new java.util.ArrayList<int[]>();
+  private int[] jj_expentry;
+  private int jj_kind = -1;
 
   /** Generate ParseException. */
-  static public ParseException generateParseException() {
+  public ParseException generateParseException() {
     jj_expentries.clear();
-    boolean[] la1tokens = new boolean[49];
+    boolean[] la1tokens = new boolean[46];
     if (jj_kind >= 0) {
       la1tokens[jj_kind] = true;
       jj_kind = -1;
     }
-    for (int i = 0; i < 19; i++) {
+    for (int i = 0; i < 20; i++) {
       if (jj_la1[i] == jj_gen) {
         for (int j = 0; j < 32; j++) {
           if ((jj_la1_0[i] & (1<<j)) != 0) {
@@ -803,16 +831,13 @@ public class CALParser implements CALParserConstants {
         }
       }
     }
-    for (int i = 0; i < 49; i++) {
+    for (int i = 0; i < 46; i++) {
       if (la1tokens[i]) {
         jj_expentry = new int[1];
         jj_expentry[0] = i;
         jj_expentries.add(jj_expentry);
       }
     }
-    jj_endpos = 0;
-    jj_rescan_token();
-    jj_add_error_token(0, 0);
     int[][] exptokseq = new int[jj_expentries.size()][];
     for (int i = 0; i < jj_expentries.size(); i++) {
       exptokseq[i] = jj_expentries.get(i);
@@ -821,47 +846,11 @@ public class CALParser implements CALParserConstants {
   }
 
   /** Enable tracing. */
-  static final public void enable_tracing() {
+  final public void enable_tracing() {
   }
 
   /** Disable tracing. */
-  static final public void disable_tracing() {
-  }
-
-  static private void jj_rescan_token() {
-    jj_rescan = true;
-    for (int i = 0; i < 2; i++) {
-    try {
-      JJCalls p = jj_2_rtns[i];
-      do {
-        if (p.gen > jj_gen) {
-          jj_la = p.arg; jj_lastpos = jj_scanpos = p.first;
-          switch (i) {
-            case 0: jj_3_1(); break;
-            case 1: jj_3_2(); break;
-          }
-        }
-        p = p.next;
-      } while (p != null);
-      } catch(LookaheadSuccess ls) { }
-    }
-    jj_rescan = false;
-  }
-
-  static private void jj_save(int index, int xla) {
-    JJCalls p = jj_2_rtns[index];
-    while (p.gen > jj_gen) {
-      if (p.next == null) { p = p.next = new JJCalls(); break; }
-      p = p.next;
-    }
-    p.gen = jj_gen + xla - jj_la; p.first = token; p.arg = xla;
-  }
-
-  static final class JJCalls {
-    int gen;
-    Token first;
-    int arg;
-    JJCalls next;
+  final public void disable_tracing() {
   }
 
 }
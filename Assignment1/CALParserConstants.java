@@ -9,86 +9,84 @@ public interface CALParserConstants {
   /** End of File. */
   int EOF = 0;
   /** RegularExpression Id. */
-  int VARIABLE = 11;
+  int VARIABLE = 8;
   /** RegularExpression Id. */
-  int CONSTANT = 12;
+  int CONSTANT = 9;
   /** RegularExpression Id. */
-  int RETURN = 13;
+  int RETURN = 10;
   /** RegularExpression Id. */
-  int INTEGER = 14;
+  int INTEGER = 11;
   /** RegularExpression Id. */
-  int BOOLEAN = 15;
+  int BOOLEAN = 12;
   /** RegularExpression Id. */
-  int VOID = 16;
+  int VOID = 13;
   /** RegularExpression Id. */
-  int MAIN = 17;
+  int MAIN = 14;
   /** RegularExpression Id. */
-  int IF = 18;
+  int IF = 15;
   /** RegularExpression Id. */
-  int ELSE = 19;
+  int ELSE = 16;
   /** RegularExpression Id. */
-  int TRUE = 20;
+  int TRUE = 17;
   /** RegularExpression Id. */
-  int FALSE = 21;
+  int FALSE = 18;
   /** RegularExpression Id. */
-  int WHILE = 22;
+  int WHILE = 19;
   /** RegularExpression Id. */
-  int SKP = 23;
+  int SKP = 20;
   /** RegularExpression Id. */
-  int COMMA = 24;
+  int COMMA = 21;
   /** RegularExpression Id. */
-  int SEMIC = 25;
+  int SEMIC = 22;
   /** RegularExpression Id. */
-  int COLON = 26;
+  int COLON = 23;
   /** RegularExpression Id. */
-  int ASSIGN = 27;
+  int ASSIGN = 24;
   /** RegularExpression Id. */
-  int BEGIN = 28;
+  int BEGIN = 25;
   /** RegularExpression Id. */
-  int IS = 29;
+  int IS = 26;
   /** RegularExpression Id. */
-  int END = 30;
+  int END = 27;
   /** RegularExpression Id. */
-  int LBR = 31;
+  int LBR = 28;
   /** RegularExpression Id. */
-  int RBR = 32;
+  int RBR = 29;
   /** RegularExpression Id. */
-  int PLUS = 33;
+  int PLUS = 30;
   /** RegularExpression Id. */
-  int MINUS = 34;
+  int MINUS = 31;
   /** RegularExpression Id. */
-  int NOT = 35;
+  int NOT = 32;
   /** RegularExpression Id. */
-  int OR = 36;
+  int OR = 33;
   /** RegularExpression Id. */
-  int AND = 37;
+  int AND = 34;
   /** RegularExpression Id. */
-  int EQUAL = 38;
+  int EQUAL = 35;
   /** RegularExpression Id. */
-  int NOT_EQUAL = 39;
+  int NOT_EQUAL = 36;
   /** RegularExpression Id. */
-  int LESS_THAN = 40;
+  int LESS_THAN = 37;
   /** RegularExpression Id. */
-  int LESS_THAN_EQUAL_TO = 41;
+  int LESS_THAN_EQUAL_TO = 38;
   /** RegularExpression Id. */
-  int GREATER_THAN = 42;
+  int GREATER_THAN = 39;
   /** RegularExpression Id. */
-  int GREATER_THAN_EQUAL_TO = 43;
+  int GREATER_THAN_EQUAL_TO = 40;
   /** RegularExpression Id. */
-  int DIGIT = 44;
+  int DIGIT = 41;
   /** RegularExpression Id. */
-  int NUMBER = 45;
+  int NUMBER = 42;
   /** RegularExpression Id. */
-  int LETTER = 46;
+  int LETTER = 43;
   /** RegularExpression Id. */
-  int ID = 47;
+  int ID = 44;
   /** RegularExpression Id. */
-  int OTHER = 48;
+  int OTHER = 45;
 
   /** Lexical state. */
   int DEFAULT = 0;
-  /** Lexical state. */
-  int IN_COMMENT = 1;
 
   /** Literal token values. */
   String[] tokenImage = {
@@ -100,9 +98,6 @@ public interface CALParserConstants {
     "\"\\f\"",
     "<token of kind 6>",
     "\"/*\"",
-    "\"/*\"",
-    "\"*/\"",
-    "<token of kind 10>",
     "\"variable\"",
     "\"constant\"",
     "\"return\"",
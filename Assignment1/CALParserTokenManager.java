@@ -3,176 +3,210 @@
 /** Token Manager. */
 public class CALParserTokenManager implements CALParserConstants
 {
-    static int commentNesting = 0;
+    int commentNesting = 0;
+
+    /**
+     * Skip the rest of a comment whose opening "/*" has just been matched,
+     * reading the stream directly rather than matching one character per
+     * token in a lexical state of its own. Every read starts a new token
+     * so the stream never has to buffer the comment. Stops after the "*"
+     * + "/" that brings commentNesting back to 0, or at the end of the
+     * input.
+     */
+    void skipComment() {
+        try {
+            char c = input_stream.BeginToken();
+            for (;;) {
+                if (c == '/') {
+                    c = input_stream.BeginToken();
+                    if (c == '*') {
+                        commentNesting++;
+                        c = input_stream.BeginToken();
+                    }
+                } else if (c == '*') {
+                    c = input_stream.BeginToken();
+                    if (c == '/') {
+                        if (--commentNesting == 0)
+                            return;
+                        c = input_stream.BeginToken();
+                    }
+                } else {
+                    c = input_stream.BeginToken();
+                }
+            }
+        } catch (java.io.IOException e) {
+            // Unterminated comment: the next token is EOF
+        }
+    }
 
   /** Debug output. */
-  public static  java.io.PrintStream debugStream = System.out;
+  public  java.io.PrintStream debugStream = System.out;
   /** Set debug output. */
-  public static  void setDebugStream(java.io.PrintStream ds) { debugStream = ds; }
-private static final int jjStopStringLiteralDfa_0(int pos, long active0)
+  public  void setDebugStream(java.io.PrintStream ds) { debugStream = ds; }
+private final int jjStopStringLiteralDfa_0(int pos, long active0)
 {
    switch (pos)
    {
       case 0:
          if ((active0 & 0x80L) != 0L)
             return 0;
-         if ((active0 & 0x70fff800L) != 0L)
+         if ((active0 & 0xe1fff00L) != 0L)
          {
-            jjmatchedKind = 47;
+            jjmatchedKind = 44;
             return 11;
          }
-         if ((active0 & 0x400000000L) != 0L)
+         if ((active0 & 0x80000000L) != 0L)
             return 7;
          return -1;
       case 1:
-         if ((active0 & 0x20040000L) != 0L)
+         if ((active0 & 0x4008000L) != 0L)
             return 11;
-         if ((active0 & 0x50fbf800L) != 0L)
+         if ((active0 & 0xa1f7f00L) != 0L)
          {
-            jjmatchedKind = 47;
+            jjmatchedKind = 44;
             jjmatchedPos = 1;
             return 11;
          }
          return -1;
       case 2:
-         if ((active0 & 0x40000000L) != 0L)
-            return 11;
-         if ((active0 & 0x10fbf800L) != 0L)
+         if ((active0 & 0x21f7f00L) != 0L)
          {
-            jjmatchedKind = 47;
+            jjmatchedKind = 44;
             jjmatchedPos = 2;
             return 11;
          }
+         if ((active0 & 0x8000000L) != 0L)
+            return 11;
          return -1;
       case 3:
-         if ((active0 & 0x1060f800L) != 0L)
+         if ((active0 & 0x20c1f00L) != 0L)
          {
-            jjmatchedKind = 47;
+            jjmatchedKind = 44;
             jjmatchedPos = 3;
             return 11;
          }
-         if ((active0 & 0x9b0000L) != 0L)
+         if ((active0 & 0x136000L) != 0L)
             return 11;
          return -1;
       case 4:
-         if ((active0 & 0xf800L) != 0L)
+         if ((active0 & 0x20c0000L) != 0L)
+            return 11;
+         if ((active0 & 0x1f00L) != 0L)
          {
-            jjmatchedKind = 47;
+            jjmatchedKind = 44;
             jjmatchedPos = 4;
             return 11;
          }
-         if ((active0 & 0x10600000L) != 0L)
-            return 11;
          return -1;
       case 5:
-         if ((active0 & 0x2000L) != 0L)
+         if ((active0 & 0x400L) != 0L)
             return 11;
-         if ((active0 & 0xd800L) != 0L)
+         if ((active0 & 0x1b00L) != 0L)
          {
-            jjmatchedKind = 47;
+            jjmatchedKind = 44;
             jjmatchedPos = 5;
             return 11;
          }
          return -1;
       case 6:
-         if ((active0 & 0x1800L) != 0L)
+         if ((active0 & 0x300L) != 0L)
          {
-            jjmatchedKind = 47;
+            jjmatchedKind = 44;
             jjmatchedPos = 6;
             return 11;
          }
-         if ((active0 & 0xc000L) != 0L)
+         if ((active0 & 0x1800L) != 0L)
             return 11;
          return -1;
       default :
          return -1;
    }
 }
-private static final int jjStartNfa_0(int pos, long active0)
+private final int jjStartNfa_0(int pos, long active0)
 {
    return jjMoveNfa_0(jjStopStringLiteralDfa_0(pos, active0), pos + 1);
 }
-static private int jjStopAtPos(int pos, int kind)
+private int jjStopAtPos(int pos, int kind)
 {
    jjmatchedKind = kind;
    jjmatchedPos = pos;
    return pos + 1;
 }
-static private int jjMoveStringLiteralDfa0_0()
+private int jjMoveStringLiteralDfa0_0()
 {
    switch(curChar)
    {
       case 33:
-         return jjMoveStringLiteralDfa1_0(0x8000000000L);
+         return jjMoveStringLiteralDfa1_0(0x1000000000L);
       case 38:
-         return jjStopAtPos(0, 37);
+         return jjStopAtPos(0, 34);
       case 40:
-         return jjStopAtPos(0, 31);
+         return jjStopAtPos(0, 28);
       case 41:
-         return jjStopAtPos(0, 32);
+         return jjStopAtPos(0, 29);
       case 43:
-         return jjStopAtPos(0, 33);
+         return jjStopAtPos(0, 30);
       case 44:
-         return jjStopAtPos(0, 24);
+         return jjStopAtPos(0, 21);
       case 45:
-         return jjStartNfaWithStates_0(0, 34, 7);
+         return jjStartNfaWithStates_0(0, 31, 7);
       case 47:
          return jjMoveStringLiteralDfa1_0(0x80L);
       case 58:
-         jjmatchedKind = 26;
-         return jjMoveStringLiteralDfa1_0(0x8000000L);
+         jjmatchedKind = 23;
+         return jjMoveStringLiteralDfa1_0(0x1000000L);
       case 59:
-         return jjStopAtPos(0, 25);
+         return jjStopAtPos(0, 22);
       case 60:
-         jjmatchedKind = 40;
-         return jjMoveStringLiteralDfa1_0(0x20000000000L);
+         jjmatchedKind = 37;
+         return jjMoveStringLiteralDfa1_0(0x4000000000L);
       case 61:
-         return jjStopAtPos(0, 38);
+         return jjStopAtPos(0, 35);
       case 62:
-         jjmatchedKind = 42;
-         return jjMoveStringLiteralDfa1_0(0x80000000000L);
+         jjmatchedKind = 39;
+         return jjMoveStringLiteralDfa1_0(0x10000000000L);
       case 66:
       case 98:
-         return jjMoveStringLiteralDfa1_0(0x10008000L);
+         return jjMoveStringLiteralDfa1_0(0x2001000L);
       case 67:
       case 99:
-         return jjMoveStringLiteralDfa1_0(0x1000L);
+         return jjMoveStringLiteralDfa1_0(0x200L);
       case 69:
       case 101:
-         return jjMoveStringLiteralDfa1_0(0x40080000L);
+         return jjMoveStringLiteralDfa1_0(0x8010000L);
       case 70:
       case 102:
-         return jjMoveStringLiteralDfa1_0(0x200000L);
+         return jjMoveStringLiteralDfa1_0(0x40000L);
       case 73:
       case 105:
-         return jjMoveStringLiteralDfa1_0(0x20044000L);
+         return jjMoveStringLiteralDfa1_0(0x4008800L);
       case 77:
       case 109:
-         return jjMoveStringLiteralDfa1_0(0x20000L);
+         return jjMoveStringLiteralDfa1_0(0x4000L);
       case 82:
       case 114:
-         return jjMoveStringLiteralDfa1_0(0x2000L);
+         return jjMoveStringLiteralDfa1_0(0x400L);
       case 83:
       case 115:
-         return jjMoveStringLiteralDfa1_0(0x800000L);
+         return jjMoveStringLiteralDfa1_0(0x100000L);
       case 84:
       case 116:
-         return jjMoveStringLiteralDfa1_0(0x100000L);
+         return jjMoveStringLiteralDfa1_0(0x20000L);
       case 86:
       case 118:
-         return jjMoveStringLiteralDfa1_0(0x10800L);
+         return jjMoveStringLiteralDfa1_0(0x2100L);
       case 87:
       case 119:
-         return jjMoveStringLiteralDfa1_0(0x400000L);
+         return jjMoveStringLiteralDfa1_0(0x80000L);
       case 124:
-         return jjStopAtPos(0, 36);
+         return jjStopAtPos(0, 33);
       case 126:
-         return jjStopAtPos(0, 35);
+         return jjStopAtPos(0, 32);
       default :
          return jjMoveNfa_0(5, 0);
    }
 }
-static private int jjMoveStringLiteralDfa1_0(long active0)
+private int jjMoveStringLiteralDfa1_0(long active0)
 {
    try { curChar = input_stream.readChar(); }
    catch(java.io.IOException e) {
@@ -186,55 +220,55 @@ static private int jjMoveStringLiteralDfa1_0(long active0)
             return jjStopAtPos(1, 7);
          break;
       case 61:
-         if ((active0 & 0x8000000L) != 0L)
-            return jjStopAtPos(1, 27);
-         else if ((active0 & 0x8000000000L) != 0L)
-            return jjStopAtPos(1, 39);
-         else if ((active0 & 0x20000000000L) != 0L)
-            return jjStopAtPos(1, 41);
-         else if ((active0 & 0x80000000000L) != 0L)
-            return jjStopAtPos(1, 43);
+         if ((active0 & 0x1000000L) != 0L)
+            return jjStopAtPos(1, 24);
+         else if ((active0 & 0x1000000000L) != 0L)
+            return jjStopAtPos(1, 36);
+         else if ((active0 & 0x4000000000L) != 0L)
+            return jjStopAtPos(1, 38);
+         else if ((active0 & 0x10000000000L) != 0L)
+            return jjStopAtPos(1, 40);
          break;
       case 65:
       case 97:
-         return jjMoveStringLiteralDfa2_0(active0, 0x220800L);
+         return jjMoveStringLiteralDfa2_0(active0, 0x44100L);
       case 69:
       case 101:
-         return jjMoveStringLiteralDfa2_0(active0, 0x10002000L);
+         return jjMoveStringLiteralDfa2_0(active0, 0x2000400L);
       case 70:
       case 102:
-         if ((active0 & 0x40000L) != 0L)
-            return jjStartNfaWithStates_0(1, 18, 11);
+         if ((active0 & 0x8000L) != 0L)
+            return jjStartNfaWithStates_0(1, 15, 11);
          break;
       case 72:
       case 104:
-         return jjMoveStringLiteralDfa2_0(active0, 0x400000L);
+         return jjMoveStringLiteralDfa2_0(active0, 0x80000L);
       case 75:
       case 107:
-         return jjMoveStringLiteralDfa2_0(active0, 0x800000L);
+         return jjMoveStringLiteralDfa2_0(active0, 0x100000L);
       case 76:
       case 108:
-         return jjMoveStringLiteralDfa2_0(active0, 0x80000L);
+         return jjMoveStringLiteralDfa2_0(active0, 0x10000L);
       case 78:
       case 110:
-         return jjMoveStringLiteralDfa2_0(active0, 0x40004000L);
+         return jjMoveStringLiteralDfa2_0(active0, 0x8000800L);
       case 79:
       case 111:
-         return jjMoveStringLiteralDfa2_0(active0, 0x19000L);
+         return jjMoveStringLiteralDfa2_0(active0, 0x3200L);
       case 82:
       case 114:
-         return jjMoveStringLiteralDfa2_0(active0, 0x100000L);
+         return jjMoveStringLiteralDfa2_0(active0, 0x20000L);
       case 83:
       case 115:
-         if ((active0 & 0x20000000L) != 0L)
-            return jjStartNfaWithStates_0(1, 29, 11);
+         if ((active0 & 0x4000000L) != 0L)
+            return jjStartNfaWithStates_0(1, 26, 11);
          break;
       default :
          break;
    }
    return jjStartNfa_0(0, active0);
 }
-static private int jjMoveStringLiteralDfa2_0(long old0, long active0)
+private int jjMoveStringLiteralDfa2_0(long old0, long active0)
 {
    if (((active0 &= old0)) == 0L)
       return jjStartNfa_0(0, old0);
@@ -247,42 +281,42 @@ static private int jjMoveStringLiteralDfa2_0(long old0, long active0)
    {
       case 68:
       case 100:
-         if ((active0 & 0x40000000L) != 0L)
-            return jjStartNfaWithStates_0(2, 30, 11);
+         if ((active0 & 0x8000000L) != 0L)
+            return jjStartNfaWithStates_0(2, 27, 11);
          break;
       case 71:
       case 103:
-         return jjMoveStringLiteralDfa3_0(active0, 0x10000000L);
+         return jjMoveStringLiteralDfa3_0(active0, 0x2000000L);
       case 73:
       case 105:
-         return jjMoveStringLiteralDfa3_0(active0, 0xc30000L);
+         return jjMoveStringLiteralDfa3_0(active0, 0x186000L);
       case 76:
       case 108:
-         return jjMoveStringLiteralDfa3_0(active0, 0x200000L);
+         return jjMoveStringLiteralDfa3_0(active0, 0x40000L);
       case 78:
       case 110:
-         return jjMoveStringLiteralDfa3_0(active0, 0x1000L);
+         return jjMoveStringLiteralDfa3_0(active0, 0x200L);
       case 79:
       case 111:
-         return jjMoveStringLiteralDfa3_0(active0, 0x8000L);
+         return jjMoveStringLiteralDfa3_0(active0, 0x1000L);
       case 82:
       case 114:
-         return jjMoveStringLiteralDfa3_0(active0, 0x800L);
+         return jjMoveStringLiteralDfa3_0(active0, 0x100L);
       case 83:
       case 115:
-         return jjMoveStringLiteralDfa3_0(active0, 0x80000L);
+         return jjMoveStringLiteralDfa3_0(active0, 0x10000L);
       case 84:
       case 116:
-         return jjMoveStringLiteralDfa3_0(active0, 0x6000L);
+         return jjMoveStringLiteralDfa3_0(active0, 0xc00L);
       case 85:
       case 117:
-         return jjMoveStringLiteralDfa3_0(active0, 0x100000L);
+         return jjMoveStringLiteralDfa3_0(active0, 0x20000L);
       default :
          break;
    }
    return jjStartNfa_0(1, active0);
 }
-static private int jjMoveStringLiteralDfa3_0(long old0, long active0)
+private int jjMoveStringLiteralDfa3_0(long old0, long active0)
 {
    if (((active0 &= old0)) == 0L)
       return jjStartNfa_0(1, old0);
@@ -295,44 +329,44 @@ static private int jjMoveStringLiteralDfa3_0(long old0, long active0)
    {
       case 68:
       case 100:
-         if ((active0 & 0x10000L) != 0L)
-            return jjStartNfaWithStates_0(3, 16, 11);
+         if ((active0 & 0x2000L) != 0L)
+            return jjStartNfaWithStates_0(3, 13, 11);
          break;
       case 69:
       case 101:
-         if ((active0 & 0x80000L) != 0L)
-            return jjStartNfaWithStates_0(3, 19, 11);
-         else if ((active0 & 0x100000L) != 0L)
-            return jjStartNfaWithStates_0(3, 20, 11);
-         return jjMoveStringLiteralDfa4_0(active0, 0x4000L);
+         if ((active0 & 0x10000L) != 0L)
+            return jjStartNfaWithStates_0(3, 16, 11);
+         else if ((active0 & 0x20000L) != 0L)
+            return jjStartNfaWithStates_0(3, 17, 11);
+         return jjMoveStringLiteralDfa4_0(active0, 0x800L);
       case 73:
       case 105:
-         return jjMoveStringLiteralDfa4_0(active0, 0x10000800L);
+         return jjMoveStringLiteralDfa4_0(active0, 0x2000100L);
       case 76:
       case 108:
-         return jjMoveStringLiteralDfa4_0(active0, 0x408000L);
+         return jjMoveStringLiteralDfa4_0(active0, 0x81000L);
       case 78:
       case 110:
-         if ((active0 & 0x20000L) != 0L)
-            return jjStartNfaWithStates_0(3, 17, 11);
+         if ((active0 & 0x4000L) != 0L)
+            return jjStartNfaWithStates_0(3, 14, 11);
          break;
       case 80:
       case 112:
-         if ((active0 & 0x800000L) != 0L)
-            return jjStartNfaWithStates_0(3, 23, 11);
+         if ((active0 & 0x100000L) != 0L)
+            return jjStartNfaWithStates_0(3, 20, 11);
          break;
       case 83:
       case 115:
-         return jjMoveStringLiteralDfa4_0(active0, 0x201000L);
+         return jjMoveStringLiteralDfa4_0(active0, 0x40200L);
       case 85:
       case 117:
-         return jjMoveStringLiteralDfa4_0(active0, 0x2000L);
+         return jjMoveStringLiteralDfa4_0(active0, 0x400L);
       default :
          break;
    }
    return jjStartNfa_0(2, active0);
 }
-static private int jjMoveStringLiteralDfa4_0(long old0, long active0)
+private int jjMoveStringLiteralDfa4_0(long old0, long active0)
 {
    if (((active0 &= old0)) == 0L)
       return jjStartNfa_0(2, old0);
@@ -345,34 +379,34 @@ static private int jjMoveStringLiteralDfa4_0(long old0, long active0)
    {
       case 65:
       case 97:
-         return jjMoveStringLiteralDfa5_0(active0, 0x800L);
+         return jjMoveStringLiteralDfa5_0(active0, 0x100L);
       case 69:
       case 101:
-         if ((active0 & 0x200000L) != 0L)
-            return jjStartNfaWithStates_0(4, 21, 11);
-         else if ((active0 & 0x400000L) != 0L)
-            return jjStartNfaWithStates_0(4, 22, 11);
-         return jjMoveStringLiteralDfa5_0(active0, 0x8000L);
+         if ((active0 & 0x40000L) != 0L)
+            return jjStartNfaWithStates_0(4, 18, 11);
+         else if ((active0 & 0x80000L) != 0L)
+            return jjStartNfaWithStates_0(4, 19, 11);
+         return jjMoveStringLiteralDfa5_0(active0, 0x1000L);
       case 71:
       case 103:
-         return jjMoveStringLiteralDfa5_0(active0, 0x4000L);
+         return jjMoveStringLiteralDfa5_0(active0, 0x800L);
       case 78:
       case 110:
-         if ((active0 & 0x10000000L) != 0L)
-            return jjStartNfaWithStates_0(4, 28, 11);
+         if ((active0 & 0x2000000L) != 0L)
+            return jjStartNfaWithStates_0(4, 25, 11);
          break;
       case 82:
       case 114:
-         return jjMoveStringLiteralDfa5_0(active0, 0x2000L);
+         return jjMoveStringLiteralDfa5_0(active0, 0x400L);
       case 84:
       case 116:
-         return jjMoveStringLiteralDfa5_0(active0, 0x1000L);
+         return jjMoveStringLiteralDfa5_0(active0, 0x200L);
       default :
          break;
    }
    return jjStartNfa_0(3, active0);
 }
-static private int jjMoveStringLiteralDfa5_0(long old0, long active0)
+private int jjMoveStringLiteralDfa5_0(long old0, long active0)
 {
    if (((active0 &= old0)) == 0L)
       return jjStartNfa_0(3, old0);
@@ -385,24 +419,24 @@ static private int jjMoveStringLiteralDfa5_0(long old0, long active0)
    {
       case 65:
       case 97:
-         return jjMoveStringLiteralDfa6_0(active0, 0x9000L);
+         return jjMoveStringLiteralDfa6_0(active0, 0x1200L);
       case 66:
       case 98:
-         return jjMoveStringLiteralDfa6_0(active0, 0x800L);
+         return jjMoveStringLiteralDfa6_0(active0, 0x100L);
       case 69:
       case 101:
-         return jjMoveStringLiteralDfa6_0(active0, 0x4000L);
+         return jjMoveStringLiteralDfa6_0(active0, 0x800L);
       case 78:
       case 110:
-         if ((active0 & 0x2000L) != 0L)
-            return jjStartNfaWithStates_0(5, 13, 11);
+         if ((active0 & 0x400L) != 0L)
+            return jjStartNfaWithStates_0(5, 10, 11);
          break;
       default :
          break;
    }
    return jjStartNfa_0(4, active0);
 }
-static private int jjMoveStringLiteralDfa6_0(long old0, long active0)
+private int jjMoveStringLiteralDfa6_0(long old0, long active0)
 {
    if (((active0 &= old0)) == 0L)
       return jjStartNfa_0(4, old0);
@@ -415,23 +449,23 @@ static private int jjMoveStringLiteralDfa6_0(long old0, long active0)
    {
       case 76:
       case 108:
-         return jjMoveStringLiteralDfa7_0(active0, 0x800L);
+         return jjMoveStringLiteralDfa7_0(active0, 0x100L);
       case 78:
       case 110:
-         if ((active0 & 0x8000L) != 0L)
-            return jjStartNfaWithStates_0(6, 15, 11);
-         return jjMoveStringLiteralDfa7_0(active0, 0x1000L);
+         if ((active0 & 0x1000L) != 0L)
+            return jjStartNfaWithStates_0(6, 12, 11);
+         return jjMoveStringLiteralDfa7_0(active0, 0x200L);
       case 82:
       case 114:
-         if ((active0 & 0x4000L) != 0L)
-            return jjStartNfaWithStates_0(6, 14, 11);
+         if ((active0 & 0x800L) != 0L)
+            return jjStartNfaWithStates_0(6, 11, 11);
          break;
       default :
          break;
    }
    return jjStartNfa_0(5, active0);
 }
-static private int jjMoveStringLiteralDfa7_0(long old0, long active0)
+private int jjMoveStringLiteralDfa7_0(long old0, long active0)
 {
    if (((active0 &= old0)) == 0L)
       return jjStartNfa_0(5, old0);
@@ -444,20 +478,20 @@ static private int jjMoveStringLiteralDfa7_0(long old0, long active0)
    {
       case 69:
       case 101:
-         if ((active0 & 0x800L) != 0L)
-            return jjStartNfaWithStates_0(7, 11, 11);
+         if ((active0 & 0x100L) != 0L)
+            return jjStartNfaWithStates_0(7, 8, 11);
          break;
       case 84:
       case 116:
-         if ((active0 & 0x1000L) != 0L)
-            return jjStartNfaWithStates_0(7, 12, 11);
+         if ((active0 & 0x200L) != 0L)
+            return jjStartNfaWithStates_0(7, 9, 11);
          break;
       default :
          break;
    }
    return jjStartNfa_0(6, active0);
 }
-static private int jjStartNfaWithStates_0(int pos, int kind, int state)
+private int jjStartNfaWithStates_0(int pos, int kind, int state)
 {
    jjmatchedKind = kind;
    jjmatchedPos = pos;
@@ -465,7 +499,7 @@ static private int jjStartNfaWithStates_0(int pos, int kind, int state)
    catch(java.io.IOException e) { return pos + 1; }
    return jjMoveNfa_0(state, pos + 1);
 }
-static private int jjMoveNfa_0(int startState, int curPos)
+private int jjMoveNfa_0(int startState, int curPos)
 {
    int startsAt = 0;
    jjnewStateCnt = 12;
@@ -486,14 +520,14 @@ static private int jjMoveNfa_0(int startState, int curPos)
                case 5:
                   if ((0x3fe000000000000L & l) != 0L)
                   {
-                     if (kind > 45)
-                        kind = 45;
+                     if (kind > 42)
+                        kind = 42;
                      jjCheckNAdd(8);
                   }
                   else if (curChar == 48)
                   {
-                     if (kind > 45)
-                        kind = 45;
+                     if (kind > 42)
+                        kind = 42;
                   }
                   else if (curChar == 45)
                      jjstateSet[jjnewStateCnt++] = 7;
@@ -527,26 +561,26 @@ static private int jjMoveNfa_0(int startState, int curPos)
                case 7:
                   if ((0x3fe000000000000L & l) == 0L)
                      break;
-                  if (kind > 45)
-                     kind = 45;
+                  if (kind > 42)
+                     kind = 42;
                   jjCheckNAdd(8);
                   break;
                case 8:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 45)
-                     kind = 45;
+                  if (kind > 42)
+                     kind = 42;
                   jjCheckNAdd(8);
                   break;
                case 9:
-                  if (curChar == 48 && kind > 45)
-                     kind = 45;
+                  if (curChar == 48 && kind > 42)
+                     kind = 42;
                   break;
                case 11:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 47)
-                     kind = 47;
+                  if (kind > 44)
+                     kind = 44;
                   jjstateSet[jjnewStateCnt++] = 11;
                   break;
                default : break;
@@ -563,8 +597,8 @@ static private int jjMoveNfa_0(int startState, int curPos)
                case 5:
                   if ((0x7fffffe07fffffeL & l) == 0L)
                      break;
-                  if (kind > 47)
-                     kind = 47;
+                  if (kind > 44)
+                     kind = 44;
                   jjCheckNAdd(11);
                   break;
                case 1:
@@ -574,8 +608,8 @@ static private int jjMoveNfa_0(int startState, int curPos)
                case 11:
                   if ((0x7fffffe87fffffeL & l) == 0L)
                      break;
-                  if (kind > 47)
-                     kind = 47;
+                  if (kind > 44)
+                     kind = 44;
                   jjCheckNAdd(11);
                   break;
                default : break;
@@ -610,39 +644,6 @@ static private int jjMoveNfa_0(int startState, int curPos)
       catch(java.io.IOException e) { return curPos; }
    }
 }
-static private int jjMoveStringLiteralDfa0_1()
-{
-   switch(curChar)
-   {
-      case 42:
-         return jjMoveStringLiteralDfa1_1(0x200L);
-      case 47:
-         return jjMoveStringLiteralDfa1_1(0x100L);
-      default :
-         return 1;
-   }
-}
-static private int jjMoveStringLiteralDfa1_1(long active0)
-{
-   try { curChar = input_stream.readChar(); }
-   catch(java.io.IOException e) {
-      return 1;
-   }
-   switch(curChar)
-   {
-      case 42:
-         if ((active0 & 0x100L) != 0L)
-            return jjStopAtPos(1, 8);
-         break;
-      case 47:
-         if ((active0 & 0x200L) != 0L)
-            return jjStopAtPos(1, 9);
-         break;
-      default :
-         return 2;
-   }
-   return 2;
-}
 static final int[] jjnextStates = {
    1, 2, 4, 
 };
@@ -650,57 +651,48 @@ static final int[] jjnextStates = {
 /** Token literal values. */
 public static final String[] jjstrLiteralImages = {
 "", null, null, null, null, null, null, null, null, null, null, null, null, 
-null, null, null, null, null, null, null, null, null, null, null, "\54", "\73", 
-"\72", "\72\75", null, null, null, "\50", "\51", "\53", "\55", "\176", "\174", "\46", 
-"\75", "\41\75", "\74", "\74\75", "\76", "\76\75", null, null, null, null, null, };
+null, null, null, null, null, null, null, null, "\54", "\73", "\72", "\72\75", null, 
+null, null, "\50", "\51", "\53", "\55", "\176", "\174", "\46", "\75", "\41\75", 
+"\74", "\74\75", "\76", "\76\75", null, null, null, null, null, };
 
 /** Lexer state names. */
 public static final String[] lexStateNames = {
    "DEFAULT",
-   "IN_COMMENT",
-};
-
-/** Lex State array. */
-public static final int[] jjnewLexState = {
-   -1, -1, -1, -1, -1, -1, -1, 1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 
-   -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 
 };
 static final long[] jjtoToken = {
-   0x1affffffff801L, 
+   0x35ffffffff01L, 
 };
 static final long[] jjtoSkip = {
-   0x7feL, 
+   0xfeL, 
 };
-static protected JavaCharStream input_stream;
-static private final int[] jjrounds = new int[12];
-static private final int[] jjstateSet = new int[24];
-private static final StringBuilder jjimage = new StringBuilder();
-private static StringBuilder image = jjimage;
-private static int jjimageLen;
-private static int lengthOfMatch;
-static protected char curChar;
+protected CharStream input_stream;
+private final int[] jjrounds = new int[12];
+private final int[] jjstateSet = new int[24];
+private final StringBuilder jjimage = new StringBuilder();
+private StringBuilder image = jjimage;
+private int jjimageLen;
+private int lengthOfMatch;
+protected char curChar;
 /** Constructor. */
-public CALParserTokenManager(JavaCharStream stream){
-   if (input_stream != null)
-      throw new TokenMgrError("ERROR: Second call to constructor of static lexer. You must use ReInit() to initialize the static variables.", TokenMgrError.STATIC_LEXER_ERROR);
+public CALParserTokenManager(CharStream stream){
    input_stream = stream;
 }
 
 /** Constructor. */
-public CALParserTokenManager(JavaCharStream stream, int lexState){
+public CALParserTokenManager(CharStream stream, int lexState){
    this(stream);
    SwitchTo(lexState);
 }
 
 /** Reinitialise parser. */
-static public void ReInit(JavaCharStream stream)
+public void ReInit(CharStream stream)
 {
    jjmatchedPos = jjnewStateCnt = 0;
    curLexState = defaultLexState;
    input_stream = stream;
    ReInitRounds();
 }
-static private void ReInitRounds()
+private void ReInitRounds()
 {
    int i;
    jjround = 0x80000001;
@@ -709,22 +701,22 @@ static private void ReInitRounds()
 }
 
 /** Reinitialise parser. */
-static public void ReInit(JavaCharStream stream, int lexState)
+public void ReInit(CharStream stream, int lexState)
 {
    ReInit(stream);
    SwitchTo(lexState);
 }
 
 /** Switch to specified lex state. */
-static public void SwitchTo(int lexState)
+public void SwitchTo(int lexState)
 {
-   if (lexState >= 2 || lexState < 0)
+   if (lexState >= 1 || lexState < 0)
       throw new TokenMgrError("Error: Ignoring invalid lexical state : " + lexState + ". State unchanged.", TokenMgrError.INVALID_LEXICAL_STATE);
    else
       curLexState = lexState;
 }
 
-static protected Token jjFillToken()
+protected Token jjFillToken()
 {
    final Token t;
    final String curTokenImage;
@@ -748,15 +740,15 @@ static protected Token jjFillToken()
    return t;
 }
 
-static int curLexState = 0;
-static int defaultLexState = 0;
-static int jjnewStateCnt;
-static int jjround;
-static int jjmatchedPos;
-static int jjmatchedKind;
+int curLexState = 0;
+int defaultLexState = 0;
+int jjnewStateCnt;
+int jjround;
+int jjmatchedPos;
+int jjmatchedKind;
 
 /** Get the next Token. */
-public static Token getNextToken() 
+public Token getNextToken() 
 {
   Token matchedToken;
   int curPos = 0;
@@ -778,97 +770,69 @@ public static Token getNextToken()
    image.setLength(0);
    jjimageLen = 0;
 
-   switch(curLexState)
+   try { input_stream.backup(0);
+      while (curChar <= 32 && (0x100003600L & (1L << curChar)) != 0L)
+         curChar = input_stream.BeginToken();
+   }
+   catch (java.io.IOException e1) { continue EOFLoop; }
+   jjmatchedKind = 0x7fffffff;
+   jjmatchedPos = 0;
+   curPos = jjMoveStringLiteralDfa0_0();
+   if (jjmatchedPos == 0 && jjmatchedKind > 45)
    {
-     case 0:
-       try { input_stream.backup(0);
-          while (curChar <= 32 && (0x100003600L & (1L << curChar)) != 0L)
-             curChar = input_stream.BeginToken();
-       }
-       catch (java.io.IOException e1) { continue EOFLoop; }
-       jjmatchedKind = 0x7fffffff;
-       jjmatchedPos = 0;
-       curPos = jjMoveStringLiteralDfa0_0();
-       if (jjmatchedPos == 0 && jjmatchedKind > 48)
-       {
-          jjmatchedKind = 48;
-       }
-       break;
-     case 1:
-       jjmatchedKind = 0x7fffffff;
-       jjmatchedPos = 0;
-       curPos = jjMoveStringLiteralDfa0_1();
-       if (jjmatchedPos == 0 && jjmatchedKind > 10)
-       {
-          jjmatchedKind = 10;
-       }
-       break;
+      jjmatchedKind = 45;
    }
-     if (jjmatchedKind != 0x7fffffff)
-     {
-        if (jjmatchedPos + 1 < curPos)
-           input_stream.backup(curPos - jjmatchedPos - 1);
-        if ((jjtoToken[jjmatchedKind >> 6] & (1L << (jjmatchedKind & 077))) != 0L)
-        {
-           matchedToken = jjFillToken();
-       if (jjnewLexState[jjmatchedKind] != -1)
-         curLexState = jjnewLexState[jjmatchedKind];
-           return matchedToken;
-        }
-        else
-        {
-           SkipLexicalActions(null);
-         if (jjnewLexState[jjmatchedKind] != -1)
-           curLexState = jjnewLexState[jjmatchedKind];
-           continue EOFLoop;
-        }
-     }
-     int error_line = input_stream.getEndLine();
-     int error_column = input_stream.getEndColumn();
-     String error_after = null;
-     boolean EOFSeen = false;
-     try { input_stream.readChar(); input_stream.backup(1); }
-     catch (java.io.IOException e1) {
-        EOFSeen = true;
-        error_after = curPos <= 1 ? "" : input_stream.GetImage();
-        if (curChar == '\n' || curChar == '\r') {
-           error_line++;
-           error_column = 0;
-        }
-        else
-           error_column++;
-     }
-     if (!EOFSeen) {
-        input_stream.backup(1);
-        error_after = curPos <= 1 ? "" : input_stream.GetImage();
-     }
-     throw new TokenMgrError(EOFSeen, curLexState, error_line, error_column, error_after, curChar, TokenMgrError.LEXICAL_ERROR);
+   if (jjmatchedKind != 0x7fffffff)
+   {
+      if (jjmatchedPos + 1 < curPos)
+         input_stream.backup(curPos - jjmatchedPos - 1);
+      if ((jjtoToken[jjmatchedKind >> 6] & (1L << (jjmatchedKind & 077))) != 0L)
+      {
+         matchedToken = jjFillToken();
+         return matchedToken;
+      }
+      else
+      {
+         SkipLexicalActions(null);
+         continue EOFLoop;
+      }
+   }
+   int error_line = input_stream.getEndLine();
+   int error_column = input_stream.getEndColumn();
+   String error_after = null;
+   boolean EOFSeen = false;
+   try { input_stream.readChar(); input_stream.backup(1); }
+   catch (java.io.IOException e1) {
+      EOFSeen = true;
+      error_after = curPos <= 1 ? "" : input_stream.GetImage();
+      if (curChar == '\n' || curChar == '\r') {
+         error_line++;
+         error_column = 0;
+      }
+      else
+         error_column++;
+   }
+   if (!EOFSeen) {
+      input_stream.backup(1);
+      error_after = curPos <= 1 ? "" : input_stream.GetImage();
+   }
+   throw new TokenMgrError(EOFSeen, curLexState, error_line, error_column, error_after, curChar, TokenMgrError.LEXICAL_ERROR);
   }
 }
 
-static void SkipLexicalActions(Token matchedToken)
+void SkipLexicalActions(Token matchedToken)
 {
    switch(jjmatchedKind)
    {
       case 7 :
          image.append(input_stream.GetSuffix(jjimageLen + (lengthOfMatch = jjmatchedPos + 1)));
-             commentNesting++;
-         break;
-      case 8 :
-         image.append(input_stream.GetSuffix(jjimageLen + (lengthOfMatch = jjmatchedPos + 1)));
-           commentNesting++;
-         break;
-      case 9 :
-         image.append(input_stream.GetSuffix(jjimageLen + (lengthOfMatch = jjmatchedPos + 1)));
-           commentNesting--;
-          if (commentNesting == 0)
-              SwitchTo(DEFAULT);
+             commentNesting++; skipComment();
          break;
       default :
          break;
    }
 }
-static private void jjCheckNAdd(int state)
+private void jjCheckNAdd(int state)
 {
    if (jjrounds[state] != jjround)
    {
@@ -876,19 +840,19 @@ static private void jjCheckNAdd(int state)
       jjrounds[state] = jjround;
    }
 }
-static private void jjAddStates(int start, int end)
+private void jjAddStates(int start, int end)
 {
    do {
       jjstateSet[jjnewStateCnt++] = jjnextStates[start];
    } while (start++ != end);
 }
-static private void jjCheckNAddTwoStates(int state1, int state2)
+private void jjCheckNAddTwoStates(int state1, int state2)
 {
    jjCheckNAdd(state1);
    jjCheckNAdd(state2);
 }
 
-static private void jjCheckNAddStates(int start, int end)
+private void jjCheckNAddStates(int start, int end)
 {
    do {
       jjCheckNAdd(jjnextStates[start]);
@@ -0,0 +1,202 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A long-lived parse server on a local UNIX domain socket, so that tools
+ * which parse one file at a time do not start and warm up a JVM for each.
+ *
+ * The protocol is lines of UTF-8 text ending in "\n", so any client that
+ * can write to a UNIX socket will do; CALClient is a small one. Each
+ * request is one of
+ * <pre>
+ *   PARSE path                 parse the file at path
+ *   SOURCE length name         parse the length bytes that follow the line,
+ *                              reporting them as name
+ * </pre>
+ * and is answered with the lines the batch command line prints for the
+ * file, followed by "END status" with its exit status. So that a file
+ * named like "END 0" cannot end an answer early, a line of the answer that
+ * starts with "END " or a backslash is sent with a backslash in front,
+ * which clients take off again. A connection can
+ * carry any number of requests, one after another. Relative paths are
+ * taken from the server's working directory, so clients should send
+ * absolute ones; a path or name with a newline in it cannot be sent. From
+ * a shell, for example:
+ * <pre>
+ *   printf 'PARSE %s\n' "$PWD/f.cal" | socat - UNIX-CONNECT:/tmp/calparser-$USER.sock
+ * </pre>
+ *
+ * The parser is warmed up before the socket is opened, and each worker
+ * thread keeps its TokenBuffer from one request to the next.
+ */
+public class CALServer implements AutoCloseable {
+
+    /** Parsed a few thousand times at start up, to get the parser compiled. */
+    private static final String WARM_UP =
+        "variable x:integer;\nconstant c:integer := 3;\n"
+        + "integer f(a:integer, b:boolean) is\nvariable t:integer;\nbegin\n"
+        + "  if (a > 0 & ~b | a = c) begin t := a - -c; end else begin t := (a + 1) - f(a, b); end\n"
+        + "  while a < 10 begin a := a + 1; skip; end\n"
+        + "  return (t);\nend\n"
+        + "main begin\n  x := f(c, true);\nend\n";
+
+    private final Path socket;
+    private final ServerSocketChannel server;
+    private final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "cal-server");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ThreadLocal<TokenBuffer> buffers = ThreadLocal.withInitial(TokenBuffer::new);
+
+    /**
+     * Warm up and listen on socket. A socket file left behind by a server
+     * that has gone away is replaced.
+     * @throws IOException if another server is already listening there
+     */
+    public CALServer(Path socket) throws IOException {
+        this.socket = socket;
+        warmUp();
+        if (Files.exists(socket)) {
+            if (answers(socket))
+                throw new IOException("A server is already listening on " + socket);
+            Files.delete(socket);
+        }
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+    }
+
+    private static boolean answers(Path socket) {
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** @return the socket file clients connect to */
+    public Path socket() {
+        return socket;
+    }
+
+    /** Accept connections until close() is called. */
+    public void serve() throws IOException {
+        for (;;) {
+            SocketChannel client;
+            try {
+                client = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            }
+            workers.execute(() -> handle(client));
+        }
+    }
+
+    /** Stop accepting connections and remove the socket file. */
+    public void close() throws IOException {
+        server.close();
+        workers.shutdown();
+        Files.deleteIfExists(socket);
+    }
+
+    private static void warmUp() {
+        byte[] good = WARM_UP.getBytes(StandardCharsets.US_ASCII);
+        byte[] bad = WARM_UP.replace(":=", "=").getBytes(StandardCharsets.US_ASCII);
+        TokenBuffer tokens = new TokenBuffer();
+        for (int i = 0; i < 5000; i++)
+            CALBatch.parseAll("warm-up", i % 10 == 0 ? bad : good, tokens);
+    }
+
+    /** Answer requests on one connection until the client closes it. */
+    private void handle(SocketChannel client) {
+        try (SocketChannel channel = client) {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            PrintStream out = new PrintStream(Channels.newOutputStream(channel), false, "UTF-8");
+            String line;
+            while ((line = readLine(in)) != null) {
+                CALBatch.Result r;
+                if (line.startsWith("PARSE ")) {
+                    r = CALBatch.parseAll(line.substring(6), buffers.get());
+                } else if (line.matches("SOURCE [0-9]{1,9} .*")) {
+                    int space = line.indexOf(' ', 7);
+                    byte[] source = new byte[Integer.parseInt(line.substring(7, space))];
+                    for (int n = 0, read; n < source.length; n += read)
+                        if ((read = in.read(source, n, source.length - n)) < 0)
+                            return;
+                    r = CALBatch.parseAll(line.substring(space + 1), source, buffers.get());
+                } else {
+                    out.println("Unknown request: " + line);
+                    out.println("END " + CALBatch.EXIT_IO);
+                    out.flush();
+                    continue;
+                }
+                answer(r, out);
+                out.println("END " + CALBatch.status(r));
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The client went away; nothing more to answer
+        }
+    }
+
+    /** Print the lines of the answer for r, escaping any that could be taken for its end. */
+    private static void answer(CALBatch.Result r, PrintStream out) throws IOException {
+        ByteArrayOutputStream printed = new ByteArrayOutputStream(128);
+        PrintStream lines = new PrintStream(printed, false, "UTF-8");
+        CALBatch.print(r, false, lines);
+        lines.flush();
+        for (String line : printed.toString("UTF-8").split("\n")) {
+            if (line.startsWith("END ") || line.startsWith("\\"))
+                out.print('\\');
+            out.println(line);
+        }
+    }
+
+    /** @return the next line of in, as UTF-8, without its newline; or null at the end */
+    static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0)
+                return line.size() == 0 ? null : line.toString("UTF-8");
+            line.write(c);
+        }
+        return line.toString("UTF-8");
+    }
+
+    /** @return the socket used when none is given: one per user, in the temporary directory */
+    public static Path defaultSocket() {
+        return Paths.get(System.getProperty("java.io.tmpdir"), "calparser-" + System.getProperty("user.name") + ".sock");
+    }
+
+    /** Run a server on the socket given, or on defaultSocket(), until killed. */
+    public static void main(String[] args) throws IOException {
+        Path socket = args.length > 0 ? Paths.get(args[0]) : defaultSocket();
+        CALServer server = new CALServer(socket);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                // Exiting anyway
+            }
+        }));
+        System.err.println("CAL Parser: listening on " + socket);
+        server.serve();
+    }
+}
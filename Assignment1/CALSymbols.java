@@ -0,0 +1,185 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resolves every identifier in a CALTree to the node that declares it, and
+ * finds identifiers that are used undeclared or declared twice in one
+ * scope.
+ *
+ * There are three kinds of scope: the global one, holding the top-level
+ * declarations and the functions; one per function, holding its
+ * parameters and local declarations; and one for main. An identifier has
+ * to be declared before it is used, and a function is declared before its
+ * own body, so it can call itself.
+ *
+ * Identifiers are interned once, as ints, ignoring case as CAL does, and
+ * the innermost declaration of each is kept in an array indexed by that
+ * int. Declaring in a scope saves the binding it hides on an undo log, and
+ * leaving the scope puts the saved bindings back, so entering a scope
+ * costs nothing and leaving it costs one step per declaration it held.
+ * The tree is read in storage order, which is children first: a subtree
+ * is a run of consecutive nodes, and nothing deeper than the top-level
+ * items is ever recursed into.
+ */
+public class CALSymbols {
+
+    private final CALTree tree;
+    private final NameTable names = new NameTable();
+    /** Interned identifier of each node, or -1 for nodes without one. */
+    private final int[] ids;
+    /** The declaration each use resolves to, or -1. */
+    private final int[] declarations;
+    private final List<String> errors = new ArrayList<String>();
+
+    /** Innermost declaration of each identifier, and the scope depth it was made at. */
+    private int[] binding = new int[64];
+    private int[] bindingDepth = new int[64];
+    /** Undo log of (identifier, hidden binding, hidden depth). */
+    private int[] undo = new int[96];
+    private int undoSize = 0;
+    private int depth = 0;
+
+    private CALSymbols(CALTree tree) {
+        this.tree = tree;
+        ids = new int[tree.size()];
+        declarations = new int[tree.size()];
+        Arrays.fill(declarations, -1);
+    }
+
+    /** @return the symbols of tree */
+    public static CALSymbols resolve(CALTree tree) {
+        CALSymbols symbols = new CALSymbols(tree);
+        symbols.intern();
+        symbols.program();
+        return symbols;
+    }
+
+    /** Give every node whose token is an identifier the id of its name. */
+    private void intern() {
+        TokenBuffer tokens = tree.tokens();
+        ByteBuffer source = tokens.source().buffer();
+        for (int n = 0; n < ids.length; n++) {
+            int t = tree.token(n);
+            ids[n] = t >= 0 && tokens.kind(t) == CALParserConstants.ID
+                ? names.intern(source, tokens.offset(t), tokens.length(t)) : -1;
+        }
+        binding = new int[Math.max(1, names.size())];
+        bindingDepth = new int[binding.length];
+        Arrays.fill(binding, -1);
+    }
+
+    private void program() {
+        for (int item = tree.firstChild(tree.root()); item >= 0; item = tree.next(item)) {
+            if (tree.kind(item) == CALTree.FUNCTION) {
+                declare(item);
+                depth++;
+                int mark = undoSize;
+                visit(tree.first(item), item);
+                leave(mark);
+                depth--;
+            } else if (tree.kind(item) == CALTree.MAIN) {
+                depth++;
+                int mark = undoSize;
+                visit(tree.first(item), item);
+                leave(mark);
+                depth--;
+            } else {
+                visit(tree.first(item), item + 1);
+            }
+        }
+    }
+
+    /** Declare and resolve in nodes from .. to - 1, in order. */
+    private void visit(int from, int to) {
+        for (int n = from; n < to; n++) {
+            switch (tree.kind(n)) {
+            case CALTree.VAR_DECL:
+            case CALTree.CONST_DECL:
+            case CALTree.PARAM:
+                declare(n);
+                break;
+            case CALTree.VAR:
+            case CALTree.CALL:
+            case CALTree.ASSIGN:
+                use(n);
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    private void declare(int n) {
+        int id = ids[n];
+        int previous = binding[id];
+        if (previous >= 0 && bindingDepth[id] == depth) {
+            errors.add("Identifier \"" + names.name(id) + "\" at line " + tree.line(n) + ", column " + tree.column(n)
+                       + " is already declared in this scope, at line " + tree.line(previous) + ", column "
+                       + tree.column(previous) + ".");
+            return;
+        }
+        if (undoSize + 3 > undo.length)
+            undo = Arrays.copyOf(undo, undo.length * 2);
+        undo[undoSize++] = id;
+        undo[undoSize++] = previous;
+        undo[undoSize++] = bindingDepth[id];
+        binding[id] = n;
+        bindingDepth[id] = depth;
+    }
+
+    private void use(int n) {
+        int id = ids[n];
+        int d = binding[id];
+        if (d < 0)
+            errors.add("Identifier \"" + names.name(id) + "\" at line " + tree.line(n) + ", column " + tree.column(n)
+                       + " is not declared.");
+        declarations[n] = d;
+    }
+
+    /** Undo the declarations made since the undo log was mark long. */
+    private void leave(int mark) {
+        while (undoSize > mark) {
+            int hiddenDepth = undo[--undoSize];
+            int hidden = undo[--undoSize];
+            int id = undo[--undoSize];
+            binding[id] = hidden;
+            bindingDepth[id] = hiddenDepth;
+        }
+    }
+
+    /** @return the tree the symbols are for */
+    public CALTree tree() {
+        return tree;
+    }
+
+    /** @return the number of distinct identifiers */
+    public int identifiers() {
+        return names.size();
+    }
+
+    /** @return the id of the identifier of node n, from 0 to identifiers() - 1, or -1 */
+    public int id(int n) {
+        return ids[n];
+    }
+
+    /** @return the identifier with the given id */
+    public String name(int id) {
+        return names.name(id);
+    }
+
+    /**
+     * @return the VAR_DECL, CONST_DECL, PARAM or FUNCTION node that the
+     *         VAR, CALL or ASSIGN node n refers to, or -1 if it is not
+     *         declared
+     */
+    public int declaration(int n) {
+        return declarations[n];
+    }
+
+    /** @return a message for each undeclared use and repeated declaration, in the order found */
+    public List<String> errors() {
+        return errors;
+    }
+}
@@ -0,0 +1,321 @@
+/**
+ * A hand-written token manager that produces exactly the tokens of the
+ * generated CALParserTokenManager.
+ *
+ * Instead of the generated per-keyword string literal DFA it classifies
+ * each character with one lookup table, scans identifier-shaped runs in a
+ * single loop and then decides whether the run is a keyword with a
+ * perfect hash over its length, first and last letters. Plug it in with
+ * new CALParser(new CALTableTokenManager(stream)).
+ *
+ * Fixed-spelling tokens share one String per kind: operators use the
+ * generated literal images and keywords written in lower case reuse the
+ * keyword constants. Over a MappedCharStream, setLazyImages(true) goes
+ * further and returns the remaining tokens as SliceTokens, whose images
+ * are only copied out of the source when image() is called.
+ */
+public class CALTableTokenManager extends CALParserTokenManager {
+
+    // Character classes
+    private static final byte C_OTHER = 0;
+    private static final byte C_SPACE = 1;
+    private static final byte C_LETTER = 2;
+    private static final byte C_DIGIT = 3;
+    private static final byte C_ZERO = 4;
+    private static final byte C_SINGLE = 5;
+    private static final byte C_COLON = 6;
+    private static final byte C_LESS = 7;
+    private static final byte C_GREATER = 8;
+    private static final byte C_BANG = 9;
+    private static final byte C_MINUS = 10;
+    private static final byte C_SLASH = 11;
+
+    private static final byte[] CLASS = new byte[128];
+    /** Token kind of each single character token. */
+    private static final int[] SINGLE = new int[128];
+    /** Characters that may continue an identifier. */
+    private static final boolean[] ID_PART = new boolean[128];
+
+    private static final String[] KEYWORDS = {
+        "variable", "constant", "return", "integer", "boolean", "void", "main", "if",
+        "else", "true", "false", "while", "skip", "begin", "is", "end",
+    };
+    private static final int[] KEYWORD_KINDS = {
+        VARIABLE, CONSTANT, RETURN, INTEGER, BOOLEAN, VOID, MAIN, IF,
+        ELSE, TRUE, FALSE, WHILE, SKP, BEGIN, IS, END,
+    };
+    private static final String[] KEYWORD_BY_HASH = new String[32];
+    private static final int[] KIND_BY_HASH = new int[32];
+    /** Longest keyword; longer runs are always identifiers. */
+    private static final int MAX_KEYWORD = 8;
+
+    static {
+        CLASS[' '] = CLASS['\t'] = CLASS['\n'] = CLASS['\r'] = CLASS['\f'] = C_SPACE;
+        for (char c = 'a'; c <= 'z'; c++) {
+            CLASS[c] = CLASS[c - 'a' + 'A'] = C_LETTER;
+            ID_PART[c] = ID_PART[c - 'a' + 'A'] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            CLASS[c] = C_DIGIT;
+            ID_PART[c] = true;
+        }
+        CLASS['0'] = C_ZERO;
+        ID_PART['_'] = true;
+        CLASS[':'] = C_COLON;
+        CLASS['<'] = C_LESS;
+        CLASS['>'] = C_GREATER;
+        CLASS['!'] = C_BANG;
+        CLASS['-'] = C_MINUS;
+        CLASS['/'] = C_SLASH;
+
+        String singles = ",;()+~|&=";
+        int[] kinds = { COMMA, SEMIC, LBR, RBR, PLUS, NOT, OR, AND, EQUAL };
+        for (int i = 0; i < kinds.length; i++) {
+            CLASS[singles.charAt(i)] = C_SINGLE;
+            SINGLE[singles.charAt(i)] = kinds[i];
+        }
+
+        for (int i = 0; i < KEYWORDS.length; i++) {
+            String k = KEYWORDS[i];
+            int h = hash(k.charAt(0), k.charAt(k.length() - 1), k.length());
+            if (KEYWORD_BY_HASH[h] != null)
+                throw new Error("Keyword hash collision: " + k);
+            KEYWORD_BY_HASH[h] = k;
+            KIND_BY_HASH[h] = KEYWORD_KINDS[i];
+        }
+    }
+
+    /** Perfect hash of the keywords; first and last must be lower case. */
+    private static int hash(char first, char last, int length) {
+        return (2 * first + 3 * last + length) & 31;
+    }
+
+    /** Lower-cased text of the identifier run being scanned. */
+    private final char[] run = new char[MAX_KEYWORD];
+    /** The shared image of the keyword just scanned, if it has one. */
+    private String sharedImage;
+
+    /** Non-null when token images are left in the source. */
+    private MappedCharStream lazySource;
+
+    /** Constructor. */
+    public CALTableTokenManager(CharStream stream) {
+        super(stream);
+    }
+
+    /** Constructor. */
+    public CALTableTokenManager(CharStream stream, int lexState) {
+        super(stream, lexState);
+    }
+
+    /**
+     * Leave ID, NUMBER and other variable images in the source and return
+     * those tokens as SliceTokens. Only a MappedCharStream keeps the whole
+     * input addressable, so that is the only stream this works with.
+     */
+    public void setLazyImages(boolean lazy) {
+        if (lazy && !(input_stream instanceof MappedCharStream))
+            throw new IllegalStateException("Lazy token images need a MappedCharStream");
+        lazySource = lazy ? (MappedCharStream) input_stream : null;
+    }
+
+    /** Get the next Token. */
+    public Token getNextToken() {
+        int kind = nextKind();
+        return sharedImage != null ? fill(kind, sharedImage) : fill(kind);
+    }
+
+    /**
+     * Scan the next token without building a Token for it. The stream's
+     * begin and end positions are left on the token's text.
+     * @return the kind of the token
+     */
+    public int nextKind() {
+        sharedImage = null;
+        try {
+            for (;;) {
+                char c = input_stream.BeginToken();
+                switch (c < 128 ? CLASS[c] : C_OTHER) {
+                case C_SPACE:
+                    continue;
+                case C_LETTER:
+                    return identifier(c);
+                case C_DIGIT:
+                    return number();
+                case C_ZERO:
+                    return NUMBER;
+                case C_SINGLE:
+                    return SINGLE[c];
+                case C_COLON:
+                    return follows('=') ? ASSIGN : COLON;
+                case C_LESS:
+                    return follows('=') ? LESS_THAN_EQUAL_TO : LESS_THAN;
+                case C_GREATER:
+                    return follows('=') ? GREATER_THAN_EQUAL_TO : GREATER_THAN;
+                case C_BANG:
+                    return follows('=') ? NOT_EQUAL : OTHER;
+                case C_MINUS:
+                    return minus();
+                case C_SLASH:
+                    if (follows('*')) {
+                        commentNesting++;
+                        skipComment();
+                        continue;
+                    }
+                    if (lineComment())
+                        continue;
+                    return OTHER;
+                default:
+                    return OTHER;
+                }
+            }
+        } catch (java.io.IOException e) {
+            return EOF;
+        }
+    }
+
+    /** @return the shared image of the token nextKind() just scanned, or null */
+    String sharedImage(int kind) {
+        return sharedImage != null ? sharedImage : jjstrLiteralImages[kind];
+    }
+
+    private Token fill(int kind) {
+        if (lazySource == null || jjstrLiteralImages[kind] != null) {
+            jjmatchedKind = kind;
+            return jjFillToken();
+        }
+        int offset = lazySource.getBeginOffset();
+        return position(new SliceToken(kind, lazySource, offset, lazySource.getEndOffset() - offset));
+    }
+
+    /** @return a token of the given kind with a shared image */
+    private Token fill(int kind, String image) {
+        return position(Token.newToken(kind, image));
+    }
+
+    private Token position(Token t) {
+        t.beginLine = input_stream.getBeginLine();
+        t.beginColumn = input_stream.getBeginColumn();
+        t.endLine = input_stream.getEndLine();
+        t.endColumn = input_stream.getEndColumn();
+        return t;
+    }
+
+    /** Consume the next character if it is c. */
+    private boolean follows(char c) {
+        try {
+            if (input_stream.readChar() == c)
+                return true;
+            input_stream.backup(1);
+        } catch (java.io.IOException e) {
+            // end of input: the token stops here
+        }
+        return false;
+    }
+
+    private int identifier(char first) {
+        int length = 1;
+        char last = first;
+        run[0] = lower(first);
+        boolean lowerCase = run[0] == first;
+        try {
+            for (;;) {
+                char c = input_stream.readChar();
+                if (c >= 128 || !ID_PART[c]) {
+                    input_stream.backup(1);
+                    break;
+                }
+                if (length < MAX_KEYWORD) {
+                    run[length] = lower(c);
+                    lowerCase &= run[length] == c;
+                }
+                length++;
+                last = c;
+            }
+        } catch (java.io.IOException e) {
+            // end of input ends the identifier
+        }
+
+        if (length <= MAX_KEYWORD) {
+            int h = hash(run[0], lower(last), length);
+            String k = KEYWORD_BY_HASH[h];
+            if (k != null && k.length() == length && sameText(k, length)) {
+                if (lowerCase)
+                    sharedImage = k;
+                return KIND_BY_HASH[h];
+            }
+        }
+        return ID;
+    }
+
+    private boolean sameText(String keyword, int length) {
+        for (int i = 0; i < length; i++)
+            if (keyword.charAt(i) != run[i])
+                return false;
+        return true;
+    }
+
+    private static char lower(char c) {
+        return c <= 'Z' && c >= 'A' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private int number() {
+        try {
+            for (;;) {
+                char c = input_stream.readChar();
+                if (c < '0' || c > '9') {
+                    input_stream.backup(1);
+                    break;
+                }
+            }
+        } catch (java.io.IOException e) {
+            // end of input ends the number
+        }
+        return NUMBER;
+    }
+
+    /** "-" followed by a non-zero digit is a negative NUMBER. */
+    private int minus() {
+        try {
+            char c = input_stream.readChar();
+            if (c >= '1' && c <= '9')
+                return number();
+            input_stream.backup(1);
+        } catch (java.io.IOException e) {
+            // a lone "-" at the end of input
+        }
+        return MINUS;
+    }
+
+    /**
+     * Having read one "/", try to match the rest of a line comment: a
+     * second "/", printable characters, then a line end. On failure the
+     * stream is left just after the first "/".
+     */
+    private boolean lineComment() {
+        int read = 0;
+        try {
+            char c = input_stream.readChar();
+            read++;
+            if (c == '/') {
+                for (;;) {
+                    c = input_stream.readChar();
+                    read++;
+                    if (c >= ' ' && c <= '~')
+                        continue;
+                    if (c == '\n')
+                        return true;
+                    if (c == '\r') {
+                        follows('\n');
+                        return true;
+                    }
+                    break;
+                }
+            }
+        } catch (java.io.IOException e) {
+            // unterminated line comment
+        }
+        input_stream.backup(read);
+        return false;
+    }
+}
@@ -0,0 +1,105 @@
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streaming access to the tokens of a CAL source, for pipelines that only
+ * look at each token once.
+ *
+ * Tokens are pulled from the token manager one at a time and are not
+ * chained through Token.next, so nothing keeps a token alive once the
+ * consumer lets go of it. Reading through a JavaCharStream, memory use
+ * stays the same however long the input is, which makes these safe on
+ * unbounded input such as System.in.
+ */
+public class CALTokens {
+
+    /** Receives the tokens pushed by forEach(). */
+    public interface Listener {
+        /**
+         * Called once per token. The Token object is reused for the next
+         * call, so copy out anything that is needed later.
+         */
+        void token(Token t);
+    }
+
+    /** @return the tokens of in, up to but not including EOF */
+    public static Stream<Token> stream(java.io.Reader in) {
+        return stream(new CALTableTokenManager(new JavaCharStream(in)));
+    }
+
+    /** @return the tokens from tm, up to but not including EOF */
+    public static Stream<Token> stream(CALParserTokenManager tm) {
+        return StreamSupport.stream(spliterator(tm), false);
+    }
+
+    /** @return an iterator over the tokens from tm, up to but not including EOF */
+    public static Iterator<Token> iterator(CALParserTokenManager tm) {
+        return Spliterators.iterator(spliterator(tm));
+    }
+
+    /**
+     * @return a spliterator over the tokens from tm. It never splits: the
+     *         default batching split would buffer an ever growing share of
+     *         an unbounded input.
+     */
+    public static Spliterator<Token> spliterator(CALParserTokenManager tm) {
+        return new Spliterator<Token>() {
+            private boolean done;
+
+            public boolean tryAdvance(Consumer<? super Token> action) {
+                if (done)
+                    return false;
+                Token t = tm.getNextToken();
+                if (t.kind == CALParserConstants.EOF) {
+                    done = true;
+                    return false;
+                }
+                action.accept(t);
+                return true;
+            }
+
+            public Spliterator<Token> trySplit() {
+                return null;
+            }
+
+            public long estimateSize() {
+                return Long.MAX_VALUE;
+            }
+
+            public int characteristics() {
+                return ORDERED | NONNULL;
+            }
+        };
+    }
+
+    /**
+     * Push every token of the stream, up to but not including EOF, to
+     * listener through one reused Token. Nothing is allocated per token
+     * except the images of ID, NUMBER and OTHER tokens and of keywords not
+     * written in lower case.
+     * @return the number of tokens pushed
+     */
+    public static long forEach(CALTableTokenManager tm, Listener listener) {
+        CharStream in = tm.input_stream;
+        Token t = new Token();
+        long count = 0;
+        for (;;) {
+            int kind = tm.nextKind();
+            if (kind == CALParserConstants.EOF)
+                return count;
+            String image = tm.sharedImage(kind);
+            t.kind = kind;
+            t.image = image != null ? image : in.GetImage();
+            t.beginLine = in.getBeginLine();
+            t.beginColumn = in.getBeginColumn();
+            t.endLine = in.getEndLine();
+            t.endColumn = in.getEndColumn();
+            listener.token(t);
+            count++;
+        }
+    }
+}
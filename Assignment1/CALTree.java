@@ -0,0 +1,510 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The syntax tree of one CAL program, held in an arena of parallel int
+ * arrays instead of one object per node.
+ *
+ * A node is an index. Each costs four ints: its kind, the index in the
+ * TokenBuffer of the token that names it (the identifier of a declaration,
+ * call or assignment, the operator of an operation, the keyword of a
+ * statement), its first child and its next sibling, or -1 where there is
+ * none. Nodes are stored children first, so the root is the last node.
+ * Images and positions come from the TokenBuffer, which has to be kept
+ * alongside the tree and not refilled while the tree is in use.
+ *
+ * Node kinds and children:
+ * <pre>
+ *   PROGRAM     decls, function*, main
+ *   VAR_DECL    type                          token: ID
+ *   CONST_DECL  type, expression              token: ID
+ *   FUNCTION    type, params, decls, block, return   token: ID
+ *   PARAMS      param*
+ *   PARAM       type                          token: ID
+ *   DECLS       (var_decl | const_decl)*
+ *   TYPE        -                             token: integer, boolean or void
+ *   RETURN      expression?                   token: return
+ *   MAIN        decls, block                  token: main
+ *   BLOCK       statement*                    token: begin, or the first token of a body
+ *   ASSIGN      expression                    token: ID
+ *   CALL        var*                          token: ID
+ *   IF, WHILE   condition, block              token: if, while
+ *   ELSE        block                         token: else
+ *   SKIP        -                             token: skip
+ *   BINARY      expression, expression        token: + or -
+ *   NEG         var                           token: -
+ *   VAR         -                             token: ID
+ *   NUMBER      -                             token: NUMBER
+ *   BOOLEAN     -                             token: true or false
+ *   OR, AND     condition, condition          token: | or &amp;
+ *   NOT         condition                     token: ~
+ *   COMPARE     expression, expression        token: the comparison
+ * </pre>
+ * Chains of binary operators group to the left. Brackets and begin..end
+ * around an expression leave no node of their own.
+ */
+public class CALTree {
+
+    public static final int PROGRAM = 0;
+    public static final int VAR_DECL = 1;
+    public static final int CONST_DECL = 2;
+    public static final int FUNCTION = 3;
+    public static final int PARAMS = 4;
+    public static final int PARAM = 5;
+    public static final int DECLS = 6;
+    public static final int TYPE = 7;
+    public static final int RETURN = 8;
+    public static final int MAIN = 9;
+    public static final int BLOCK = 10;
+    public static final int ASSIGN = 11;
+    public static final int CALL = 12;
+    public static final int IF = 13;
+    public static final int WHILE = 14;
+    public static final int ELSE = 15;
+    public static final int SKIP = 16;
+    public static final int BINARY = 17;
+    public static final int NEG = 18;
+    public static final int VAR = 19;
+    public static final int NUMBER = 20;
+    public static final int BOOLEAN = 21;
+    public static final int OR = 22;
+    public static final int AND = 23;
+    public static final int NOT = 24;
+    public static final int COMPARE = 25;
+
+    /** Printable names of the node kinds, indexed by kind. */
+    public static final String[] KIND_NAMES = {
+        "PROGRAM", "VAR_DECL", "CONST_DECL", "FUNCTION", "PARAMS", "PARAM",
+        "DECLS", "TYPE", "RETURN", "MAIN", "BLOCK", "ASSIGN", "CALL", "IF",
+        "WHILE", "ELSE", "SKIP", "BINARY", "NEG", "VAR", "NUMBER", "BOOLEAN",
+        "OR", "AND", "NOT", "COMPARE",
+    };
+
+    private final TokenBuffer tokens;
+    private int[] kinds;
+    private int[] tokenIndex;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private int size = 0;
+
+    /** Roots of the subtrees built so far that have no parent yet. */
+    private int[] pending = new int[64];
+    private int depth = 0;
+
+    /**
+     * Parse stream as a program and build its tree, in two phases like
+     * CALIndexParser.parse(stream, buffer): a failed parse is repeated by
+     * CALParser so the exception is exactly the one it would throw.
+     */
+    public static CALTree parse(MappedCharStream stream) throws ParseException {
+        TokenBuffer tokens = new TokenBuffer();
+        tokens.fill(stream);
+        return parse(tokens, stream);
+    }
+
+    /** As parse(stream), for tokens that have already been read from stream. */
+    static CALTree parse(TokenBuffer tokens, MappedCharStream stream) throws ParseException {
+        try {
+            return new CALIndexParser(tokens).tree();
+        } catch (ParseException fast) {
+            stream.seek(0);
+            new CALParser(new CALTableTokenManager(stream)).program();
+            throw fast;
+        }
+    }
+
+    /** Constructor, for a tree over the given tokens. */
+    CALTree(TokenBuffer tokens) {
+        // Typical programs have about two nodes for every three tokens
+        this(tokens, Math.max(16, tokens.size() / 4 * 3));
+    }
+
+    /** Constructor, for a tree over the given tokens with room for capacity nodes. */
+    CALTree(TokenBuffer tokens, int capacity) {
+        this.tokens = tokens;
+        kinds = new int[capacity];
+        tokenIndex = new int[capacity];
+        firstChild = new int[capacity];
+        nextSibling = new int[capacity];
+    }
+
+    /** @return the number of subtrees waiting for a parent */
+    int depth() {
+        return depth;
+    }
+
+    /** Add a node with no children. */
+    void leaf(int kind, int token) {
+        push(add(kind, token, -1));
+    }
+
+    /** Add a node whose children are the subtrees built since depth was mark. */
+    void close(int kind, int token, int mark) {
+        int first = -1;
+        if (mark < depth) {
+            first = pending[mark];
+            for (int i = mark + 1; i < depth; i++)
+                nextSibling[pending[i - 1]] = pending[i];
+        }
+        depth = mark;
+        push(add(kind, token, first));
+    }
+
+    private int add(int kind, int token, int first) {
+        if (size == kinds.length)
+            ensureCapacity(size + 1);
+        kinds[size] = kind;
+        tokenIndex[size] = token;
+        firstChild[size] = first;
+        nextSibling[size] = -1;
+        return size++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > kinds.length) {
+            capacity = Math.max(capacity, kinds.length * 2);
+            kinds = java.util.Arrays.copyOf(kinds, capacity);
+            tokenIndex = java.util.Arrays.copyOf(tokenIndex, capacity);
+            firstChild = java.util.Arrays.copyOf(firstChild, capacity);
+            nextSibling = java.util.Arrays.copyOf(nextSibling, capacity);
+        }
+    }
+
+    private void push(int node) {
+        if (depth == pending.length)
+            pending = java.util.Arrays.copyOf(pending, depth * 2);
+        pending[depth++] = node;
+    }
+
+    /**
+     * Put the whole of part in place of the subtree rooted at root. part's
+     * nodes refer to tokens() already; in the rest of the tree, token
+     * indices from oldEnd on move by tokenDelta.
+     */
+    void replace(int root, CALTree part, int oldEnd, int tokenDelta) {
+        int first = root;
+        while (firstChild[first] >= 0)
+            first = firstChild[first];
+        int nodeDelta = part.size - (root + 1 - first);
+        int after = nextSibling[root];
+        ensureCapacity(size + nodeDelta);
+
+        // Nodes before the subtree only ever link back, or to its root;
+        // the root and everything after it move by nodeDelta
+        int tail = size - root - 1;
+        System.arraycopy(kinds, root + 1, kinds, root + 1 + nodeDelta, tail);
+        System.arraycopy(tokenIndex, root + 1, tokenIndex, root + 1 + nodeDelta, tail);
+        System.arraycopy(firstChild, root + 1, firstChild, root + 1 + nodeDelta, tail);
+        System.arraycopy(nextSibling, root + 1, nextSibling, root + 1 + nodeDelta, tail);
+        size += nodeDelta;
+        if (nodeDelta != 0) {
+            for (int n = 0; n < first; n++)
+                if (nextSibling[n] == root)
+                    nextSibling[n] = root + nodeDelta;
+            for (int n = root + 1 + nodeDelta; n < size; n++) {
+                if (firstChild[n] >= first)
+                    firstChild[n] += nodeDelta;
+                if (nextSibling[n] >= first)
+                    nextSibling[n] += nodeDelta;
+            }
+        }
+        if (tokenDelta != 0)
+            for (int n = root + 1 + nodeDelta; n < size; n++)
+                if (tokenIndex[n] >= oldEnd)
+                    tokenIndex[n] += tokenDelta;
+
+        for (int n = 0; n < part.size; n++) {
+            kinds[first + n] = part.kinds[n];
+            tokenIndex[first + n] = part.tokenIndex[n];
+            firstChild[first + n] = part.firstChild[n] < 0 ? -1 : part.firstChild[n] + first;
+            nextSibling[first + n] = part.nextSibling[n] < 0 ? -1 : part.nextSibling[n] + first;
+        }
+        nextSibling[root + nodeDelta] = after < first ? after : after + nodeDelta;
+    }
+
+    /**
+     * @return a copy of the tree without the subtrees rooted at roots, over
+     *         the same tokens. Nodes keep their order, so the copy is laid
+     *         out exactly as if the subtrees had never been parsed.
+     */
+    public CALTree without(int[] roots) {
+        boolean[] gone = new boolean[size];
+        for (int r : roots)
+            for (int n = first(r); n <= r; n++)
+                gone[n] = true;
+        int[] map = new int[size];
+        int kept = 0;
+        for (int n = 0; n < size; n++)
+            map[n] = gone[n] ? -1 : kept++;
+
+        CALTree copy = new CALTree(tokens, Math.max(1, kept));
+        for (int n = 0; n < size; n++) {
+            if (gone[n])
+                continue;
+            int m = map[n];
+            copy.kinds[m] = kinds[n];
+            copy.tokenIndex[m] = tokenIndex[n];
+            int c = firstChild[n];
+            while (c >= 0 && gone[c])
+                c = nextSibling[c];
+            copy.firstChild[m] = c < 0 ? -1 : map[c];
+            int s = nextSibling[n];
+            while (s >= 0 && gone[s])
+                s = nextSibling[s];
+            copy.nextSibling[m] = s < 0 ? -1 : map[s];
+        }
+        copy.size = kept;
+        return copy;
+    }
+
+    /** @return the most bytes write() can take */
+    int serializedSize() {
+        return 5 + 16 * size;
+    }
+
+    /**
+     * Write the nodes to out, for read() to restore. Links are written as
+     * distances from the node and token indices as the difference from the
+     * node before, so that most fit in a byte.
+     */
+    void write(java.nio.ByteBuffer out) {
+        TokenBuffer.putVarint(out, size);
+        int token = 0;
+        for (int n = 0; n < size; n++) {
+            out.put((byte) kinds[n]);
+            int d = tokenIndex[n] - token;
+            TokenBuffer.putVarint(out, d << 1 ^ d >> 31);
+            TokenBuffer.putVarint(out, firstChild[n] < 0 ? 0 : n - firstChild[n]);
+            TokenBuffer.putVarint(out, nextSibling[n] < 0 ? 0 : nextSibling[n] - n);
+            token = tokenIndex[n];
+        }
+    }
+
+    /**
+     * @return the tree write() wrote to in, over tokens
+     * @throws IllegalArgumentException if in does not hold a tree over tokens
+     */
+    static CALTree read(java.nio.ByteBuffer in, TokenBuffer tokens) {
+        int size = TokenBuffer.getVarint(in);
+        // Each node takes at least four bytes
+        if (size < 0 || size > in.remaining() / 4)
+            throw new IllegalArgumentException("bad node count " + size);
+        CALTree tree = new CALTree(tokens, Math.max(size, 1));
+        int token = 0;
+        for (int n = 0; n < size; n++) {
+            tree.kinds[n] = in.get();
+            int d = TokenBuffer.getVarint(in);
+            token += d >>> 1 ^ -(d & 1);
+            tree.tokenIndex[n] = token;
+            int child = TokenBuffer.getVarint(in);
+            tree.firstChild[n] = child == 0 ? -1 : n - child;
+            int next = TokenBuffer.getVarint(in);
+            tree.nextSibling[n] = next == 0 ? -1 : n + next;
+            if (token < -1 || token >= tokens.size() || child < 0 || child > n || next < 0 || next >= size - n)
+                throw new IllegalArgumentException("node " + n + " refers outside the tree");
+        }
+        tree.size = size;
+        return tree;
+    }
+
+    /** @return the tokens the tree refers to */
+    public TokenBuffer tokens() {
+        return tokens;
+    }
+
+    /** @return the number of nodes */
+    public int size() {
+        return size;
+    }
+
+    /** @return the root, a PROGRAM node */
+    public int root() {
+        return size - 1;
+    }
+
+    /** @return the kind of node n */
+    public int kind(int n) {
+        return kinds[n];
+    }
+
+    /** @return the index in tokens() of the token of node n */
+    public int token(int n) {
+        return tokenIndex[n];
+    }
+
+    /** @return the kind of the token of node n, such as CALParserConstants.PLUS */
+    public int tokenKind(int n) {
+        return tokens.kind(tokenIndex[n]);
+    }
+
+    /** @return the text of the token of node n */
+    public String image(int n) {
+        return tokens.image(tokenIndex[n]);
+    }
+
+    /** @return the line of the token of node n */
+    public int line(int n) {
+        return tokens.line(tokenIndex[n]);
+    }
+
+    /** @return the column of the token of node n */
+    public int column(int n) {
+        return tokens.column(tokenIndex[n]);
+    }
+
+    /** @return the first child of node n, or -1 */
+    public int firstChild(int n) {
+        return firstChild[n];
+    }
+
+    /** @return the node after n in its parent's children, or -1 */
+    public int next(int n) {
+        return nextSibling[n];
+    }
+
+    /**
+     * @return the first node of the subtree rooted at n, which is made up
+     *         of the nodes from there up to n itself
+     */
+    public int first(int n) {
+        while (firstChild[n] >= 0)
+            n = firstChild[n];
+        return n;
+    }
+
+    /** @return child i of node n, or -1 if it has no more than i children */
+    public int child(int n, int i) {
+        int c = firstChild[n];
+        while (i-- > 0 && c >= 0)
+            c = nextSibling[c];
+        return c;
+    }
+
+    /** @return the number of children of node n */
+    public int childCount(int n) {
+        int count = 0;
+        for (int c = firstChild[n]; c >= 0; c = nextSibling[c])
+            count++;
+        return count;
+    }
+
+    /** @return a read-only view of node n */
+    public Node node(int n) {
+        return new Node(n);
+    }
+
+    /** @return the heap taken by the arena, not counting the tokens */
+    public long arenaBytes() {
+        return 4L * (kinds.length + tokenIndex.length + firstChild.length + nextSibling.length + pending.length);
+    }
+
+    /** @return the tree as nested brackets, one node per line */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (size > 0)
+            append(sb, root(), 0);
+        return sb.toString();
+    }
+
+    private void append(StringBuilder sb, int n, int indent) {
+        for (int i = 0; i < indent; i++)
+            sb.append("  ");
+        sb.append(KIND_NAMES[kinds[n]]);
+        if (kinds[n] != PROGRAM && kinds[n] != PARAMS && kinds[n] != DECLS)
+            sb.append(' ').append(image(n));
+        sb.append('\n');
+        for (int c = firstChild[n]; c >= 0; c = nextSibling[c])
+            append(sb, c, indent + 1);
+    }
+
+    /**
+     * A read-only view of one node. Views are cheap and not cached: two
+     * views of the same node are equal but not the same object.
+     */
+    public final class Node implements Iterable<Node> {
+
+        private final int index;
+
+        private Node(int index) {
+            this.index = index;
+        }
+
+        /** @return the index of this node in the arena */
+        public int index() {
+            return index;
+        }
+
+        /** @return the kind of this node */
+        public int kind() {
+            return kinds[index];
+        }
+
+        /** @return the kind of this node's token */
+        public int tokenKind() {
+            return CALTree.this.tokenKind(index);
+        }
+
+        /** @return the text of this node's token */
+        public String image() {
+            return CALTree.this.image(index);
+        }
+
+        /** @return the line of this node's token */
+        public int line() {
+            return CALTree.this.line(index);
+        }
+
+        /** @return the column of this node's token */
+        public int column() {
+            return CALTree.this.column(index);
+        }
+
+        /** @return the number of children */
+        public int childCount() {
+            return CALTree.this.childCount(index);
+        }
+
+        /** @return child i */
+        public Node child(int i) {
+            int c = CALTree.this.child(index, i);
+            if (c < 0)
+                throw new IndexOutOfBoundsException(KIND_NAMES[kinds[index]] + " has no child " + i);
+            return new Node(c);
+        }
+
+        /** @return the children in order */
+        public Iterator<Node> iterator() {
+            return new Iterator<Node>() {
+                private int next = firstChild[index];
+
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+
+                public Node next() {
+                    if (next < 0)
+                        throw new NoSuchElementException();
+                    Node n = new Node(next);
+                    next = nextSibling[next];
+                    return n;
+                }
+            };
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Node && ((Node) o).index == index && ((Node) o).tree() == CALTree.this;
+        }
+
+        public int hashCode() {
+            return index;
+        }
+
+        private CALTree tree() {
+            return CALTree.this;
+        }
+
+        public String toString() {
+            return KIND_NAMES[kinds[index]] + " " + image();
+        }
+    }
+}
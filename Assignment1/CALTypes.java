@@ -0,0 +1,312 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Checks the types of a resolved CAL program.
+ *
+ * Every expression gets the type integer or boolean, or void for a call
+ * of a void function, and is checked where it is used: an assignment has
+ * to give a variable a value of its type, a constant the type it is
+ * declared with, a call one argument of the right type for each
+ * parameter, and a return the type of its function, or no value from a
+ * void function. Comparisons compare like types, "<", "<=", ">" and ">="
+ * only integers, and "+" and "-" take integers. Constants and functions
+ * cannot be assigned to, and a function cannot be used as a variable nor
+ * a variable called. Variables, constants and parameters cannot be void.
+ * Identifiers CALSymbols could not resolve, and those declared void, get
+ * no type, and nothing that depends on them is reported.
+ *
+ * Each top-level item is checked on its own in one pass over its nodes in
+ * storage order, which gives children their types before their parents
+ * are looked at. Items only share the global declarations and function
+ * signatures, which are read but never written, so they are checked in
+ * parallel on a fork-join pool. Messages are worked out afterwards on the
+ * calling thread, since looking up lines and images is not thread-safe,
+ * and come out in source order.
+ */
+public class CALTypes {
+
+    public static final int INTEGER = 0;
+    public static final int BOOLEAN = 1;
+    public static final int VOID = 2;
+    /** No type: a statement, or an expression with an unresolved identifier. */
+    public static final int NONE = -1;
+
+    /** Printable names of the types, indexed by type. */
+    public static final String[] TYPE_NAMES = { "integer", "boolean", "void" };
+
+    private final CALSymbols symbols;
+    private final CALTree tree;
+    private final int[] types;
+    private final List<String> errors = new ArrayList<String>();
+
+    /** A problem found on a worker: a message with the position of node after before. */
+    private static final class Problem {
+        final int node;
+        final String before, after;
+
+        Problem(int node, String before, String after) {
+            this.node = node;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    private CALTypes(CALSymbols symbols) {
+        this.symbols = symbols;
+        this.tree = symbols.tree();
+        types = new int[tree.size()];
+        Arrays.fill(types, NONE);
+    }
+
+    /**
+     * Check the program symbols was resolved for, using up to the given
+     * number of threads.
+     */
+    public static CALTypes check(CALSymbols symbols, int threads) {
+        CALTypes types = new CALTypes(symbols);
+        CALTree tree = symbols.tree();
+        List<Integer> items = new ArrayList<Integer>();
+        for (int item = tree.firstChild(tree.root()); item >= 0; item = tree.next(item))
+            items.add(item);
+        List<List<Problem>> problems = new ArrayList<List<Problem>>(items.size());
+        for (int i = 0; i < items.size(); i++)
+            problems.add(null);
+        if (threads <= 1) {
+            for (int i = 0; i < items.size(); i++)
+                problems.set(i, types.item(items.get(i)));
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.invoke(new Items(types, items, problems, 0, items.size()));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        for (List<Problem> list : problems)
+            for (Problem p : list)
+                types.errors.add(p.before + " at line " + tree.line(p.node) + ", column " + tree.column(p.node) + p.after);
+        return types;
+    }
+
+    /** Checks a range of top-level items, splitting it for idle workers to steal. */
+    private static final class Items extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CALTypes types;
+        private final List<Integer> items;
+        private final List<List<Problem>> problems;
+        private final int from, to;
+
+        Items(CALTypes types, List<Integer> items, List<List<Problem>> problems, int from, int to) {
+            this.types = types;
+            this.items = items;
+            this.problems = problems;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from == 1) {
+                // Each worker sets its own element, which a presized ArrayList allows
+                problems.set(from, types.item(items.get(from)));
+            } else if (to > from) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Items(types, items, problems, from, mid), new Items(types, items, problems, mid, to));
+            }
+        }
+    }
+
+    /** Type the nodes of one top-level item. @return its problems, in source order */
+    private List<Problem> item(int item) {
+        List<Problem> problems = new ArrayList<Problem>(0);
+        int returns = tree.kind(item) == CALTree.FUNCTION ? declaredType(item) : NONE;
+        for (int n = tree.first(item); n <= item; n++) {
+            switch (tree.kind(n)) {
+            case CALTree.TYPE:
+                types[n] = typeOf(tree.tokenKind(n));
+                break;
+            case CALTree.NUMBER:
+                types[n] = INTEGER;
+                break;
+            case CALTree.BOOLEAN:
+            case CALTree.OR:
+            case CALTree.AND:
+            case CALTree.NOT:
+                types[n] = BOOLEAN;
+                break;
+            case CALTree.VAR:
+                types[n] = variable(n, problems);
+                break;
+            case CALTree.NEG:
+                types[n] = integer(tree.firstChild(n), n, problems);
+                break;
+            case CALTree.BINARY: {
+                int left = tree.firstChild(n);
+                int a = integer(left, n, problems), b = integer(tree.next(left), n, problems);
+                types[n] = a == NONE || b == NONE ? NONE : INTEGER;
+                break;
+            }
+            case CALTree.CALL:
+                types[n] = call(n, problems);
+                break;
+            case CALTree.COMPARE:
+                compare(n, problems);
+                types[n] = BOOLEAN;
+                break;
+            case CALTree.ASSIGN:
+                assign(n, problems);
+                break;
+            case CALTree.VAR_DECL:
+            case CALTree.PARAM:
+                if (types[tree.firstChild(n)] == VOID)
+                    problems.add(new Problem(n, (tree.kind(n) == CALTree.PARAM ? "Parameter \"" : "Variable \"")
+                                             + name(n) + "\"", " cannot be void."));
+                break;
+            case CALTree.CONST_DECL: {
+                int value = types[tree.next(tree.firstChild(n))];
+                int type = types[tree.firstChild(n)];
+                if (type == VOID)
+                    problems.add(new Problem(n, "Constant \"" + name(n) + "\"", " cannot be void."));
+                else if (value != NONE && value != type)
+                    problems.add(new Problem(n, "Constant \"" + name(n) + "\"",
+                                             " is " + TYPE_NAMES[type] + " but its value is " + TYPE_NAMES[value] + "."));
+                break;
+            }
+            case CALTree.RETURN: {
+                int value = tree.firstChild(n) < 0 ? VOID : types[tree.firstChild(n)];
+                if (value != NONE && value != returns)
+                    problems.add(new Problem(n, "Return", " gives " + (value == VOID ? "no value" : TYPE_NAMES[value])
+                                             + " from " + TYPE_NAMES[returns] + " function \"" + name(item) + "\"."));
+                break;
+            }
+            default:
+                break;
+            }
+        }
+        // Parents come after their children, but may start before them
+        problems.sort((a, b) -> Integer.compare(tree.token(a.node), tree.token(b.node)));
+        return problems;
+    }
+
+    /** @return the type of the variable or constant used at n */
+    private int variable(int n, List<Problem> problems) {
+        int d = symbols.declaration(n);
+        if (d < 0)
+            return NONE;
+        if (tree.kind(d) == CALTree.FUNCTION) {
+            problems.add(new Problem(n, "Function \"" + name(n) + "\"", " is used as a variable."));
+            return NONE;
+        }
+        int type = declaredType(d);
+        return type == VOID ? NONE : type;
+    }
+
+    /** @return INTEGER, or NONE if expression n, an operand of op, is not an integer */
+    private int integer(int n, int op, List<Problem> problems) {
+        int type = types[n];
+        if (type != NONE && type != INTEGER)
+            problems.add(new Problem(n, "Operand of " + CALParserConstants.tokenImage[tree.tokenKind(op)],
+                                     " is " + TYPE_NAMES[type] + ", not integer."));
+        return type == INTEGER ? INTEGER : NONE;
+    }
+
+    /** Check the arguments of call n. @return the type the function returns */
+    private int call(int n, List<Problem> problems) {
+        int d = symbols.declaration(n);
+        if (d < 0)
+            return NONE;
+        if (tree.kind(d) != CALTree.FUNCTION) {
+            problems.add(new Problem(n, "\"" + name(n) + "\"", " is called but is not a function."));
+            return NONE;
+        }
+        int param = tree.firstChild(tree.child(d, 1));
+        int arg = tree.firstChild(n);
+        int count = 0;
+        for (; param >= 0 && arg >= 0; param = tree.next(param), arg = tree.next(arg)) {
+            count++;
+            int expected = declaredType(param), type = types[arg];
+            if (type != NONE && expected != VOID && type != expected)
+                problems.add(new Problem(arg, "Argument " + count + " of \"" + name(n) + "\"",
+                                         " is " + TYPE_NAMES[type] + ", not " + TYPE_NAMES[expected] + "."));
+        }
+        if (param >= 0 || arg >= 0)
+            problems.add(new Problem(n, "Call of \"" + name(n) + "\"", " has the wrong number of arguments: expected "
+                                     + tree.childCount(tree.child(d, 1)) + ", found " + tree.childCount(n) + "."));
+        return declaredType(d);
+    }
+
+    private void compare(int n, List<Problem> problems) {
+        int left = tree.firstChild(n);
+        int a = types[left], b = types[tree.next(left)];
+        if (a == NONE || b == NONE)
+            return;
+        int op = tree.tokenKind(n);
+        if (a == VOID || b == VOID)
+            problems.add(new Problem(n, "Comparison " + CALParserConstants.tokenImage[op], " compares a void value."));
+        else if (a != b)
+            problems.add(new Problem(n, "Comparison " + CALParserConstants.tokenImage[op],
+                                     " compares " + TYPE_NAMES[a] + " with " + TYPE_NAMES[b] + "."));
+        else if (a != INTEGER && op != CALParserConstants.EQUAL && op != CALParserConstants.NOT_EQUAL)
+            problems.add(new Problem(n, "Comparison " + CALParserConstants.tokenImage[op],
+                                     " compares " + TYPE_NAMES[a] + " values; it takes integers."));
+    }
+
+    private void assign(int n, List<Problem> problems) {
+        int d = symbols.declaration(n);
+        if (d < 0)
+            return;
+        int kind = tree.kind(d);
+        if (kind == CALTree.CONST_DECL || kind == CALTree.FUNCTION) {
+            problems.add(new Problem(n, (kind == CALTree.FUNCTION ? "Function \"" : "Constant \"") + name(n) + "\"",
+                                     " cannot be assigned to."));
+            return;
+        }
+        int target = declaredType(d), value = types[tree.firstChild(n)];
+        if (value != NONE && target != VOID && value != target)
+            problems.add(new Problem(n, "Assignment to \"" + name(n) + "\"",
+                                     " gives " + TYPE_NAMES[value] + " to " + TYPE_NAMES[target] + " variable."));
+    }
+
+    /** @return the type a declaration or function node is declared with */
+    private int declaredType(int d) {
+        return typeOf(tree.tokenKind(tree.firstChild(d)));
+    }
+
+    private static int typeOf(int tokenKind) {
+        switch (tokenKind) {
+        case CALParserConstants.INTEGER:
+            return INTEGER;
+        case CALParserConstants.BOOLEAN:
+            return BOOLEAN;
+        default:
+            return VOID;
+        }
+    }
+
+    private String name(int n) {
+        return symbols.name(symbols.id(n));
+    }
+
+    /** @return the symbols the types are for */
+    public CALSymbols symbols() {
+        return symbols;
+    }
+
+    /**
+     * @return the type of expression node n, or of the TYPE node n, or NONE
+     *         for other nodes and for expressions that use an identifier
+     *         which is not declared
+     */
+    public int type(int n) {
+        return types[n];
+    }
+
+    /** @return a message for each type error, in source order */
+    public List<String> errors() {
+        return errors;
+    }
+}
@@ -0,0 +1,190 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Lexes one large input on several threads.
+ *
+ * The input is cut into chunks at arbitrary offsets. Each chunk is lexed
+ * twice on a worker, without knowing what came before it: once as if it
+ * started in code, and once as if it started inside a comment one level
+ * deep. Each speculative run stops at the first token that ends at or
+ * past the end of its chunk.
+ *
+ * The runs are then stitched together in order. Between tokens the lexer
+ * is always in code with commentNesting 0, so its output depends only on
+ * where it resumes: if a speculative run has a token ending exactly where
+ * the true token stream has got to, everything after it in that run is
+ * what the sequential lexer would produce. Where neither run lines up,
+ * which happens when a chunk starts inside a comment nested more than one
+ * deep or in the middle of a token, the stitcher lexes tokens itself
+ * until it reaches a position one of the runs knows about.
+ */
+final class ChunkedLexer {
+
+    /** Chunks are never smaller than this many characters. */
+    static final int MIN_CHUNK = 1 << 16;
+
+    private final MappedCharStream source;
+    private final int threads;
+    private final int[] starts;
+    private TokenBuffer[] code;
+    private TokenBuffer[] comment;
+
+    ChunkedLexer(MappedCharStream source, int threads, int minChunk) {
+        this.source = source;
+        this.threads = threads;
+        int length = source.length();
+        int chunks = (int) Math.max(1, Math.min(threads * 4L, length / minChunk));
+        starts = new int[chunks + 1];
+        for (int i = 0; i <= chunks; i++)
+            starts[i] = (int) ((long) length * i / chunks);
+    }
+
+    /** Fill out with the tokens of the whole input. */
+    void lex(TokenBuffer out) {
+        speculate();
+        stitch(out);
+    }
+
+    private void speculate() {
+        int chunks = starts.length - 1;
+        code = new TokenBuffer[chunks];
+        comment = new TokenBuffer[chunks];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> pending = new ArrayList<Future<?>>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                final int chunk = i;
+                pending.add(pool.submit(() -> {
+                    code[chunk] = run(chunk, false);
+                    comment[chunk] = run(chunk, true);
+                }));
+            }
+            for (Future<?> f : pending)
+                f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (java.util.concurrent.ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Lex one chunk, starting in code or one comment deep. */
+    private TokenBuffer run(int chunk, boolean inComment) {
+        MappedCharStream stream = source.fork();
+        stream.seek(starts[chunk]);
+        CALTableTokenManager tm = new CALTableTokenManager(stream);
+        int end = starts[chunk + 1];
+        TokenBuffer tokens = new TokenBuffer(inComment ? 16 : Math.max(16, (end - starts[chunk]) / 4));
+        tokens.clear(stream);
+        if (inComment) {
+            int resume = commentEnd(source.buffer(), starts[chunk], end);
+            if (resume < 0)
+                return tokens;
+            stream.seek(resume);
+        }
+        for (;;) {
+            int kind = tm.nextKind();
+            tokens.add(kind, stream);
+            if (kind == CALParserConstants.EOF || stream.getEndOffset() >= end)
+                return tokens;
+        }
+    }
+
+    /**
+     * Find the end of a comment one level deep that is open at from, as
+     * skipComment() would, but looking at the bytes directly and giving up
+     * at the end of the chunk: a chunk that starts in code can run a long
+     * way before a stray close of comment, and the run would be no use.
+     * @return the offset just past the comment, or -1
+     */
+    private static int commentEnd(java.nio.ByteBuffer buf, int from, int end) {
+        int limit = Math.min(buf.limit(), end + 1);
+        int depth = 1;
+        int i = from;
+        while (i < limit - 1) {
+            byte c = buf.get(i);
+            byte next = buf.get(i + 1);
+            if (c == '/' && next == '*') {
+                depth++;
+                i += 2;
+            } else if (c == '*' && next == '/') {
+                if (--depth == 0)
+                    return i + 2;
+                i += 2;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    private void stitch(TokenBuffer out) {
+        out.clear(source);
+        MappedCharStream stream = source.fork();
+        int resume = 0;
+        for (;;) {
+            int chunk = chunkOf(resume);
+            TokenBuffer run = code[chunk];
+            int from = resume == starts[chunk] ? 0 : after(run, resume);
+            if (from < 0) {
+                run = comment[chunk];
+                from = after(run, resume);
+            }
+
+            if (from >= 0 && from < run.size()) {
+                out.append(run, from, run.size());
+                int last = run.size() - 1;
+                if (run.kind(last) == CALParserConstants.EOF)
+                    return;
+                resume = run.offset(last) + run.length(last);
+                continue;
+            }
+
+            // No run lines up here: lex one token ourselves and try again
+            stream.seek(resume);
+            int kind = new CALTableTokenManager(stream).nextKind();
+            out.add(kind, stream);
+            if (kind == CALParserConstants.EOF)
+                return;
+            resume = stream.getEndOffset();
+        }
+    }
+
+    /** @return the chunk holding offset, or the last chunk if it is past the end */
+    private int chunkOf(int offset) {
+        int lo = 0, hi = starts.length - 2;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] <= offset)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /** @return the index of the token after the one ending at offset, or -1 */
+    private static int after(TokenBuffer run, int offset) {
+        int lo = 0, hi = run.size() - 1;
+        if (hi >= 0 && run.kind(hi) == CALParserConstants.EOF)
+            hi--;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int end = run.offset(mid) + run.length(mid);
+            if (end < offset)
+                lo = mid + 1;
+            else if (end > offset)
+                hi = mid - 1;
+            else
+                return mid + 1;
+        }
+        return -1;
+    }
+}
@@ -1,15 +1,20 @@
 /* Generated By:JavaCC: Do not edit this line. JavaCharStream.java Version 5.0 */
-/* JavaCCOptions:STATIC=true,SUPPORT_CLASS_VISIBILITY_PUBLIC=true */
+/* JavaCCOptions:STATIC=false,SUPPORT_CLASS_VISIBILITY_PUBLIC=true */
 /**
  * An implementation of interface CharStream, where the stream is assumed to
  * contain only ASCII characters (with java-like unicode escape processing).
+ *
+ * Line and column numbers are not stored per buffered character. Each
+ * character read is given an offset, the raw text is scanned into a
+ * LineIndex as it is read, and positions are resolved from the offsets
+ * when the token manager asks for them.
  */
 
 public
-class JavaCharStream
+class JavaCharStream implements CharStream
 {
   /** Whether parser is static. */
-  public static final boolean staticFlag = true;
+  public static final boolean staticFlag = false;
 
   static final int hexval(char c) throws java.io.IOException {
     switch(c)
@@ -59,36 +64,48 @@ class JavaCharStream
   }
 
 /** Position in buffer. */
-  static public int bufpos = -1;
-  static int bufsize;
-  static int available;
-  static int tokenBegin;
-  static protected int bufline[];
-  static protected int bufcolumn[];
+  public int bufpos = -1;
+  int bufsize;
+  int available;
+  int tokenBegin;
+
+  /** Offset of the character at bufpos, counting decoded characters. */
+  protected int pos = -1;
+  /** Offset of the character at tokenBegin. */
+  protected int tokenBeginPos = 0;
+  /** Number of raw characters read from inputStream so far. */
+  protected int rawCount = 0;
+  /** Set when BeginToken() found the end of input. */
+  protected boolean atEOF = false;
+  protected LineIndex lines;
+  /** Size of the line index at which forget() is next called. */
+  protected int forgetAt = 4096;
 
-  static protected int column = 0;
-  static protected int line = 1;
-
-  static protected boolean prevCharIsCR = false;
-  static protected boolean prevCharIsLF = false;
+  /**
+   * Unicode escapes make the raw text longer than the decoded text. For
+   * each escape, in order, the decoded offset it was read at and the total
+   * number of raw characters saved by it and all earlier escapes.
+   */
+  protected int[] escapeAt = new int[0];
+  protected int[] escapeShift = new int[0];
+  protected int escapeCount = 0;
 
-  static protected java.io.Reader inputStream;
+  protected java.io.Reader inputStream;
 
-  static protected char[] nextCharBuf;
-  static protected char[] buffer;
-  static protected int maxNextCharInd = 0;
-  static protected int nextCharInd = -1;
-  static protected int inBuf = 0;
-  static protected int tabSize = 8;
+  protected char[] nextCharBuf;
+  protected char[] buffer;
+  protected int maxNextCharInd = 0;
+  protected int nextCharInd = -1;
+  /** nextCharBuf holds no backslash between nextCharInd and this index. */
+  protected int plainEnd = 0;
+  protected int inBuf = 0;
 
-  static protected void setTabSize(int i) { tabSize = i; }
-  static protected int getTabSize(int i) { return tabSize; }
+  protected void setTabSize(int i) { lines.tabSize = i; }
+  protected int getTabSize(int i) { return lines.tabSize; }
 
-  static protected void ExpandBuff(boolean wrapAround)
+  protected void ExpandBuff(boolean wrapAround)
   {
     char[] newbuffer = new char[bufsize + 2048];
-    int newbufline[] = new int[bufsize + 2048];
-    int newbufcolumn[] = new int[bufsize + 2048];
 
     try
     {
@@ -98,14 +115,6 @@ class JavaCharStream
         System.arraycopy(buffer, 0, newbuffer, bufsize - tokenBegin, bufpos);
         buffer = newbuffer;
 
-        System.arraycopy(bufline, tokenBegin, newbufline, 0, bufsize - tokenBegin);
-        System.arraycopy(bufline, 0, newbufline, bufsize - tokenBegin, bufpos);
-        bufline = newbufline;
-
-        System.arraycopy(bufcolumn, tokenBegin, newbufcolumn, 0, bufsize - tokenBegin);
-        System.arraycopy(bufcolumn, 0, newbufcolumn, bufsize - tokenBegin, bufpos);
-        bufcolumn = newbufcolumn;
-
         bufpos += (bufsize - tokenBegin);
     }
     else
@@ -113,12 +122,6 @@ class JavaCharStream
         System.arraycopy(buffer, tokenBegin, newbuffer, 0, bufsize - tokenBegin);
         buffer = newbuffer;
 
-        System.arraycopy(bufline, tokenBegin, newbufline, 0, bufsize - tokenBegin);
-        bufline = newbufline;
-
-        System.arraycopy(bufcolumn, tokenBegin, newbufcolumn, 0, bufsize - tokenBegin);
-        bufcolumn = newbufcolumn;
-
         bufpos -= tokenBegin;
       }
     }
@@ -131,9 +134,10 @@ class JavaCharStream
     tokenBegin = 0;
   }
 
-  static protected void FillBuff() throws java.io.IOException
+  protected void FillBuff() throws java.io.IOException
   {
     int i;
+    plainEnd = 0;
     if (maxNextCharInd == 4096)
       maxNextCharInd = nextCharInd = 0;
 
@@ -145,7 +149,11 @@ class JavaCharStream
         throw new java.io.IOException();
       }
       else
-         maxNextCharInd += i;
+      {
+        lines.scan(nextCharBuf, maxNextCharInd, maxNextCharInd + i, rawCount);
+        rawCount += i;
+        maxNextCharInd += i;
+      }
       return;
     }
     catch(java.io.IOException e) {
@@ -154,16 +162,13 @@ class JavaCharStream
         --bufpos;
         backup(0);
       }
-      else
-      {
-        bufline[bufpos] = line;
-        bufcolumn[bufpos] = column;
-      }
+      // Either way the current position is the last character read.
+      --pos;
       throw e;
     }
   }
 
-  static protected char ReadByte() throws java.io.IOException
+  protected char ReadByte() throws java.io.IOException
   {
     if (++nextCharInd >= maxNextCharInd)
       FillBuff();
@@ -172,7 +177,7 @@ class JavaCharStream
   }
 
 /** @return starting character for token. */
-  static public char BeginToken() throws java.io.IOException
+  public char BeginToken() throws java.io.IOException
   {
     if (inBuf > 0)
     {
@@ -182,16 +187,28 @@ class JavaCharStream
         bufpos = 0;
 
       tokenBegin = bufpos;
+      tokenBeginPos = ++pos;
+      atEOF = false;
       return buffer[bufpos];
     }
 
     tokenBegin = 0;
     bufpos = -1;
+    tokenBeginPos = pos + 1;
+    atEOF = false;
+    if (lines.size() > forgetAt || escapeCount > 1024 || rawCount > (1 << 30))
+      forget();
 
-    return readChar();
+    try {
+      return readChar();
+    } catch (java.io.IOException e) {
+      // The EOF token sits on the last raw character read
+      atEOF = true;
+      throw e;
+    }
   }
 
-  static protected void AdjustBuffSize()
+  protected void AdjustBuffSize()
   {
     if (available == bufsize)
     {
@@ -211,48 +228,8 @@ class JavaCharStream
       available = tokenBegin;
   }
 
-  static protected void UpdateLineColumn(char c)
-  {
-    column++;
-
-    if (prevCharIsLF)
-    {
-      prevCharIsLF = false;
-      line += (column = 1);
-    }
-    else if (prevCharIsCR)
-    {
-      prevCharIsCR = false;
-      if (c == '\n')
-      {
-        prevCharIsLF = true;
-      }
-      else
-        line += (column = 1);
-    }
-
-    switch (c)
-    {
-      case '\r' :
-        prevCharIsCR = true;
-        break;
-      case '\n' :
-        prevCharIsLF = true;
-        break;
-      case '\t' :
-        column--;
-        column += (tabSize - (column % tabSize));
-        break;
-      default :
-        break;
-    }
-
-    bufline[bufpos] = line;
-    bufcolumn[bufpos] = column;
-  }
-
 /** Read a character. */
-  static public char readChar() throws java.io.IOException
+  public char readChar() throws java.io.IOException
   {
     if (inBuf > 0)
     {
@@ -261,35 +238,62 @@ class JavaCharStream
       if (++bufpos == bufsize)
         bufpos = 0;
 
+      ++pos;
       return buffer[bufpos];
     }
 
+    if (nextCharInd + 1 < plainEnd)
+    {
+      // No backslash ahead, so there is no escape to look for
+      if (++bufpos == available)
+        AdjustBuffSize();
+      ++pos;
+      return buffer[bufpos] = nextCharBuf[++nextCharInd];
+    }
+
+    char c = readEscaped();
+    plainEnd = findBackslash(nextCharInd + 1);
+    return c;
+  }
+
+  /** @return index of the first backslash in nextCharBuf from index from on */
+  protected int findBackslash(int from)
+  {
+    int i = from;
+    while (i < maxNextCharInd && nextCharBuf[i] != '\\')
+      i++;
+    return i;
+  }
+
+  /** Read a character that may start a unicode escape. */
+  protected char readEscaped() throws java.io.IOException
+  {
     char c;
 
     if (++bufpos == available)
       AdjustBuffSize();
+    ++pos;
 
     if ((buffer[bufpos] = c = ReadByte()) == '\\')
     {
-      UpdateLineColumn(c);
-
       int backSlashCnt = 1;
 
       for (;;) // Read all the backslashes
       {
         if (++bufpos == available)
           AdjustBuffSize();
+        ++pos;
 
         try
         {
           if ((buffer[bufpos] = c = ReadByte()) != '\\')
           {
-            UpdateLineColumn(c);
             // found a non-backslash char.
             if ((c == 'u') && ((backSlashCnt & 1) == 1))
             {
               if (--bufpos < 0)
                 bufpos = bufsize - 1;
+              --pos;
 
               break;
             }
@@ -307,28 +311,30 @@ class JavaCharStream
           return '\\';
         }
 
-        UpdateLineColumn(c);
         backSlashCnt++;
       }
 
       // Here, we have seen an odd number of backslash's followed by a 'u'
+      int rawLength = 2;
+      int at = rawOffset(pos);
       try
       {
         while ((c = ReadByte()) == 'u')
-          ++column;
+          ++rawLength;
 
         buffer[bufpos] = c = (char)(hexval(c) << 12 |
                                     hexval(ReadByte()) << 8 |
                                     hexval(ReadByte()) << 4 |
                                     hexval(ReadByte()));
 
-        column += 4;
+        rawLength += 4;
       }
       catch(java.io.IOException e)
       {
-        throw new Error("Invalid escape character at line " + line +
-                                         " column " + column + ".");
+        throw new Error("Invalid escape character at line " + lines.line(at) +
+                                         " column " + (lines.column(at) + rawLength - 1) + ".");
       }
+      addEscape(pos, rawLength);
 
       if (backSlashCnt == 1)
         return c;
@@ -339,10 +345,66 @@ class JavaCharStream
       }
     }
     else
-    {
-      UpdateLineColumn(c);
       return c;
+  }
+
+  /**
+   * Drop the line and escape records for text before the current token,
+   * and renumber offsets so the current token starts at 0. Called from
+   * BeginToken() now and then, this keeps memory and offsets bounded
+   * however long the input is.
+   */
+  protected void forget()
+  {
+    int decoded = tokenBeginPos;
+    int raw = rawOffset(decoded);
+    int first = 0;
+    while (first < escapeCount && escapeAt[first] < decoded)
+      first++;
+    int shift = raw - decoded;
+    for (int i = first; i < escapeCount; i++)
+    {
+      escapeAt[i - first] = escapeAt[i] - decoded;
+      escapeShift[i - first] = escapeShift[i] - shift;
+    }
+    escapeCount -= first;
+
+    // The EOF token is placed on the character before, so keep its line
+    lines.forget(raw - 1, raw);
+    forgetAt = Math.max(4096, 2 * lines.size());
+    pos -= decoded;
+    tokenBeginPos = 0;
+    rawCount -= raw;
+  }
+
+  /** Record that the character at offset was spelled with rawLength raw characters. */
+  protected void addEscape(int offset, int rawLength)
+  {
+    if (escapeCount == escapeAt.length)
+    {
+      escapeAt = java.util.Arrays.copyOf(escapeAt, escapeCount * 2 + 4);
+      escapeShift = java.util.Arrays.copyOf(escapeShift, escapeCount * 2 + 4);
+    }
+    int shift = escapeCount == 0 ? 0 : escapeShift[escapeCount - 1];
+    escapeAt[escapeCount] = offset;
+    escapeShift[escapeCount++] = shift + rawLength - 1;
+  }
+
+  /** @return the raw offset of the character at the given decoded offset */
+  protected int rawOffset(int offset)
+  {
+    if (escapeCount == 0 || offset <= escapeAt[0])
+      return offset;
+    int lo = 0, hi = escapeCount - 1;
+    while (lo < hi)
+    {
+      int mid = (lo + hi + 1) >>> 1;
+      if (escapeAt[mid] < offset)
+        lo = mid;
+      else
+        hi = mid - 1;
     }
+    return offset + escapeShift[lo];
   }
 
   @Deprecated
@@ -350,8 +412,8 @@ class JavaCharStream
    * @deprecated
    * @see #getEndColumn
    */
-  static public int getColumn() {
-    return bufcolumn[bufpos];
+  public int getColumn() {
+    return getEndColumn();
   }
 
   @Deprecated
@@ -359,34 +421,35 @@ class JavaCharStream
    * @deprecated
    * @see #getEndLine
    */
-  static public int getLine() {
-    return bufline[bufpos];
+  public int getLine() {
+    return getEndLine();
   }
 
 /** Get end column. */
-  static public int getEndColumn() {
-    return bufcolumn[bufpos];
+  public int getEndColumn() {
+    return lines.column(atEOF ? rawCount - 1 : rawOffset(pos));
   }
 
 /** Get end line. */
-  static public int getEndLine() {
-    return bufline[bufpos];
+  public int getEndLine() {
+    return lines.line(atEOF ? rawCount - 1 : rawOffset(pos));
   }
 
 /** @return column of token start */
-  static public int getBeginColumn() {
-    return bufcolumn[tokenBegin];
+  public int getBeginColumn() {
+    return lines.column(atEOF ? rawCount - 1 : rawOffset(tokenBeginPos));
   }
 
 /** @return line number of token start */
-  static public int getBeginLine() {
-    return bufline[tokenBegin];
+  public int getBeginLine() {
+    return lines.line(atEOF ? rawCount - 1 : rawOffset(tokenBeginPos));
   }
 
 /** Retreat. */
-  static public void backup(int amount) {
+  public void backup(int amount) {
 
     inBuf += amount;
+    pos -= amount;
     if ((bufpos -= amount) < 0)
       bufpos += bufsize;
   }
@@ -395,18 +458,11 @@ class JavaCharStream
   public JavaCharStream(java.io.Reader dstream,
                  int startline, int startcolumn, int buffersize)
   {
-    if (inputStream != null)
-      throw new Error("\n   ERROR: Second call to the constructor of a static JavaCharStream.\n" +
-      "       You must either use ReInit() or set the JavaCC option STATIC to false\n" +
-      "       during the generation of this class.");
     inputStream = dstream;
-    line = startline;
-    column = startcolumn - 1;
+    lines = new LineIndex(startline, startcolumn);
 
     available = bufsize = buffersize;
     buffer = new char[buffersize];
-    bufline = new int[buffersize];
-    bufcolumn = new int[buffersize];
     nextCharBuf = new char[4096];
   }
 
@@ -427,20 +483,20 @@ class JavaCharStream
                  int startline, int startcolumn, int buffersize)
   {
     inputStream = dstream;
-    line = startline;
-    column = startcolumn - 1;
+    lines = new LineIndex(startline, startcolumn);
 
     if (buffer == null || buffersize != buffer.length)
     {
       available = bufsize = buffersize;
       buffer = new char[buffersize];
-      bufline = new int[buffersize];
-      bufcolumn = new int[buffersize];
       nextCharBuf = new char[4096];
     }
-    prevCharIsLF = prevCharIsCR = false;
-    tokenBegin = inBuf = maxNextCharInd = 0;
+    tokenBegin = inBuf = maxNextCharInd = plainEnd = 0;
     nextCharInd = bufpos = -1;
+    tokenBeginPos = rawCount = escapeCount = 0;
+    forgetAt = 4096;
+    pos = -1;
+    atEOF = false;
   }
 
 /** Reinitialise. */
@@ -533,7 +589,7 @@ class JavaCharStream
   }
 
   /** @return token image as String */
-  static public String GetImage()
+  public String GetImage()
   {
     if (bufpos >= tokenBegin)
       return new String(buffer, tokenBegin, bufpos - tokenBegin + 1);
@@ -543,7 +599,7 @@ class JavaCharStream
   }
 
   /** @return suffix */
-  static public char[] GetSuffix(int len)
+  public char[] GetSuffix(int len)
   {
     char[] ret = new char[len];
 
@@ -560,60 +616,19 @@ class JavaCharStream
   }
 
   /** Set buffers back to null when finished. */
-  static public void Done()
+  public void Done()
   {
     nextCharBuf = null;
     buffer = null;
-    bufline = null;
-    bufcolumn = null;
   }
 
   /**
    * Method to adjust line and column numbers for the start of a token.
    */
-  static public void adjustBeginLineColumn(int newLine, int newCol)
+  public void adjustBeginLineColumn(int newLine, int newCol)
   {
-    int start = tokenBegin;
-    int len;
-
-    if (bufpos >= tokenBegin)
-    {
-      len = bufpos - tokenBegin + inBuf + 1;
-    }
-    else
-    {
-      len = bufsize - tokenBegin + bufpos + 1 + inBuf;
-    }
-
-    int i = 0, j = 0, k = 0;
-    int nextColDiff = 0, columnDiff = 0;
-
-    while (i < len && bufline[j = start % bufsize] == bufline[k = ++start % bufsize])
-    {
-      bufline[j] = newLine;
-      nextColDiff = columnDiff + bufcolumn[k] - bufcolumn[j];
-      bufcolumn[j] = newCol + columnDiff;
-      columnDiff = nextColDiff;
-      i++;
-    }
-
-    if (i < len)
-    {
-      bufline[j] = newLine++;
-      bufcolumn[j] = newCol + columnDiff;
-
-      while (i++ < len)
-      {
-        if (bufline[j = start % bufsize] != bufline[++start % bufsize])
-          bufline[j] = newLine++;
-        else
-          bufline[j] = newLine;
-      }
-    }
-
-    line = bufline[j];
-    column = bufcolumn[j];
+    lines.renumber(rawOffset(tokenBeginPos), newLine, newCol);
   }
 
 }
-/* JavaCC - OriginalChecksum=086b5bff8d82ca16452456f12687b665 (do not edit this line) */
+/* JavaCC - OriginalChecksum=10c238069013ccaf8d8956ab4a208f77 (do not edit this line) */
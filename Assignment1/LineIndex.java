@@ -0,0 +1,209 @@
+/**
+ * Maps character offsets to line and column numbers.
+ *
+ * Source text is fed in as it is read; only the offsets of line starts and
+ * tab characters are recorded, and positions are worked out by binary search
+ * when somebody asks for them. Lines end at "\n", "\r" or "\r\n" and tabs
+ * advance to the next multiple of the tab size, exactly as JavaCharStream
+ * has always counted them.
+ */
+final class LineIndex {
+
+    private final int firstLine;
+    private final int firstColumn;
+    int tabSize = 8;
+
+    private int[] lineStarts = new int[64];
+    private int lines = 1;
+    private int[] tabs = new int[16];
+    private int tabCount = 0;
+    private int lastLine = 0;
+    /** Lines dropped from the front of lineStarts by forget(). */
+    private int droppedLines = 0;
+
+    /** Renumbering set up by renumber(), applied from adjustFrom on. */
+    private int adjustFrom = Integer.MAX_VALUE;
+    private int adjustLine;
+    private int lineShift;
+    private int columnShift;
+
+    /** Everything before this offset has been scanned. */
+    private int scanned = 0;
+    /** A CR ends a line unless LF follows, which the next scan decides. */
+    private boolean pendingCR = false;
+
+    LineIndex(int startLine, int startColumn) {
+        firstLine = startLine;
+        firstColumn = startColumn - 1;
+    }
+
+    /** @return the offset up to which text has been scanned */
+    int scanned() {
+        return scanned;
+    }
+
+    /** Scan chars that sit at offsets base .. base + (to - from) - 1. */
+    void scan(char[] text, int from, int to, int base) {
+        for (int i = from; i < to; i++) {
+            char c = text[i];
+            int offset = base + i - from;
+            if (pendingCR) {
+                pendingCR = false;
+                if (c != '\n')
+                    addLine(offset);
+            }
+            if (c > '\r')
+                continue;
+            if (c == '\n')
+                addLine(offset + 1);
+            else if (c == '\r')
+                pendingCR = true;
+            else if (c == '\t')
+                addTab(offset);
+        }
+        scanned = base + to - from;
+    }
+
+    /** Scan the bytes at absolute offsets from .. to - 1 of buf. */
+    void scan(java.nio.ByteBuffer buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte c = buf.get(i);
+            if (pendingCR) {
+                pendingCR = false;
+                if (c != '\n')
+                    addLine(i);
+            }
+            if (c > '\r' || c < 0)
+                continue;
+            if (c == '\n')
+                addLine(i + 1);
+            else if (c == '\r')
+                pendingCR = true;
+            else if (c == '\t')
+                addTab(i);
+        }
+        scanned = to;
+    }
+
+    private void addLine(int offset) {
+        if (lines == lineStarts.length)
+            lineStarts = java.util.Arrays.copyOf(lineStarts, lines * 2);
+        lineStarts[lines++] = offset;
+    }
+
+    private void addTab(int offset) {
+        if (tabCount == tabs.length)
+            tabs = java.util.Arrays.copyOf(tabs, tabCount * 2);
+        tabs[tabCount++] = offset;
+    }
+
+    /** @return index into lineStarts of the line holding offset */
+    private int lineIndex(int offset) {
+        // Lookups nearly always land on the same line as the previous one
+        // or the line after it, so try those before searching.
+        int last = lastLine;
+        if (lineStarts[last] <= offset) {
+            if (last + 1 == lines || offset < lineStarts[last + 1])
+                return last;
+            if (last + 2 == lines || offset < lineStarts[last + 2])
+                return lastLine = last + 1;
+        }
+        int lo = 0, hi = lines - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (lineStarts[mid] <= offset)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return lastLine = lo;
+    }
+
+    /** @return line number of the character at offset */
+    int line(int offset) {
+        int index = lineIndex(offset);
+        if (offset >= adjustFrom)
+            return firstLine + droppedLines + index + lineShift;
+        return firstLine + droppedLines + index;
+    }
+
+    /** @return column number of the character at offset */
+    int column(int offset) {
+        int col = rawColumn(offset);
+        if (offset >= adjustFrom && lineIndex(offset) == adjustLine - droppedLines)
+            return col + columnShift;
+        return col;
+    }
+
+    /**
+     * Number the character at offset as newLine, newColumn. Later lines
+     * follow on from newLine and the rest of its own line from newColumn.
+     */
+    void renumber(int offset, int newLine, int newColumn) {
+        adjustFrom = Integer.MAX_VALUE;
+        adjustLine = droppedLines + lineIndex(offset);
+        lineShift = newLine - (firstLine + adjustLine);
+        columnShift = newColumn - rawColumn(offset);
+        adjustFrom = offset;
+    }
+
+    /** @return the number of line starts and tabs held */
+    int size() {
+        return lines + tabCount;
+    }
+
+    /**
+     * Drop what is known about the lines before the one holding offset;
+     * positions before that line can no longer be asked for. Then move
+     * every offset delta characters down, so the numbers stay small
+     * however much text goes through.
+     */
+    void forget(int offset, int delta) {
+        int keep = lineIndex(offset);
+        int start = lineStarts[keep];
+        System.arraycopy(lineStarts, keep, lineStarts, 0, lines - keep);
+        lines -= keep;
+        droppedLines += keep;
+        lastLine = 0;
+
+        int firstTab = 0;
+        while (firstTab < tabCount && tabs[firstTab] < start)
+            firstTab++;
+        System.arraycopy(tabs, firstTab, tabs, 0, tabCount - firstTab);
+        tabCount -= firstTab;
+
+        for (int i = 0; i < lines; i++)
+            lineStarts[i] -= delta;
+        for (int i = 0; i < tabCount; i++)
+            tabs[i] -= delta;
+        scanned -= delta;
+        if (adjustFrom != Integer.MAX_VALUE)
+            adjustFrom -= delta;
+    }
+
+    private int rawColumn(int offset) {
+        int index = lineIndex(offset);
+        int start = lineStarts[index];
+        int col = index == 0 && droppedLines == 0 ? firstColumn : 0;
+
+        if (tabCount == 0 || tabs[tabCount - 1] < start)
+            return col + offset - start + 1;
+
+        // Find the first tab on this line, then walk the tabs up to offset
+        int lo = 0, hi = tabCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tabs[mid] < start)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        int prev = start;
+        for (int t = lo; t < tabCount && tabs[t] <= offset; t++) {
+            col += tabs[t] - prev;
+            col += tabSize - (col % tabSize);
+            prev = tabs[t] + 1;
+        }
+        return col + offset - prev + 1;
+    }
+}
@@ -0,0 +1,291 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A CharStream that reads straight out of a ByteBuffer, normally a
+ * read-only memory mapping of the source file.
+ *
+ * CAL source is ASCII, so every byte is one character and the whole input
+ * stays addressable: there is no Reader, no intermediate char buffer and
+ * backup() is just a change of position. Token images are sliced out of
+ * the buffer when asked for. Inputs are limited to 2 GB.
+ *
+ * The stream does not process Java-style Unicode escapes as it reads, as
+ * JavaCharStream does; decode() gives one over a source with its escapes
+ * decoded beforehand instead, which reads the same characters and reports
+ * the same positions as JavaCharStream would.
+ */
+public class MappedCharStream implements CharStream {
+
+    private final ByteBuffer buf;
+    private final int limit;
+
+    /** Offset of the last character read. */
+    private int pos = -1;
+    /** Offset of the first character of the current token. */
+    private int tokenBegin = 0;
+
+    private byte[] scratch = new byte[128];
+    private final LineIndex lines;
+    /** The text lines and columns are counted in: buf, or the source it was decoded from. */
+    private final ByteBuffer text;
+    /** Offset in buf of each decoded escape, and how far text has got ahead of buf after it; or null. */
+    private final int[] escapeAt, escapeShift;
+
+    /** Map the whole of the given file. */
+    public static MappedCharStream open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MappedCharStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /** Constructor. Reads buf from index 0 up to its limit. */
+    public MappedCharStream(ByteBuffer buf) {
+        this(buf, 1, 1);
+    }
+
+    /** Constructor. */
+    public MappedCharStream(ByteBuffer buf, int startline, int startcolumn) {
+        this(buf, buf, null, null, new LineIndex(startline, startcolumn));
+    }
+
+    private MappedCharStream(ByteBuffer buf, ByteBuffer text, int[] escapeAt, int[] escapeShift, LineIndex lines) {
+        this.buf = buf;
+        this.limit = buf.limit();
+        this.text = text;
+        this.escapeAt = escapeAt;
+        this.escapeShift = escapeShift;
+        this.lines = lines;
+    }
+
+    /**
+     * @return a stream over source with its unicode escapes decoded, by the
+     *         rules JavaCharStream follows: a backslash preceded by an even
+     *         number of others, one or more "u" and four hex digits. As the
+     *         stream holds a byte per character, an escape for a character
+     *         past 0xff, which CAL can only take as OTHER, reads as 0xff.
+     * @throws TokenMgrError if an escape is cut short, with the message
+     *         JavaCharStream gives
+     */
+    public static MappedCharStream decode(byte[] source) {
+        byte[] out = null;
+        int[] at = null, shift = null;
+        int escapes = 0, n = 0, i = 0;
+        while (i < source.length) {
+            if (source[i] != '\\') {
+                if (out != null)
+                    out[n] = source[i];
+                n++;
+                i++;
+                continue;
+            }
+            int u = i;
+            while (u < source.length && source[u] == '\\')
+                u++;
+            if (((u - i) & 1) == 0 || u == source.length || source[u] != 'u') {
+                // No escape: the backslashes stand for themselves
+                if (out != null)
+                    System.arraycopy(source, i, out, n, u - i);
+                n += u - i;
+                i = u;
+                continue;
+            }
+            int digits = u;
+            while (digits < source.length && source[digits] == 'u')
+                digits++;
+            int c = hex(source, digits);
+            if (c < 0) {
+                LineIndex lines = new LineIndex(1, 1);
+                lines.scan(ByteBuffer.wrap(source), 0, source.length);
+                throw new TokenMgrError("Invalid escape character at line " + lines.line(u - 1)
+                                        + " column " + (lines.column(u - 1) + digits - u) + ".",
+                                        TokenMgrError.LEXICAL_ERROR);
+            }
+            if (out == null) {
+                out = Arrays.copyOf(source, source.length);
+                at = new int[16];
+                shift = new int[16];
+            }
+            // The last backslash starts the escape; any before it stay
+            System.arraycopy(source, i, out, n, u - 1 - i);
+            n += u - 1 - i;
+            out[n] = (byte) Math.min(c, 0xff);
+            if (escapes == at.length) {
+                at = Arrays.copyOf(at, escapes * 2);
+                shift = Arrays.copyOf(shift, escapes * 2);
+            }
+            at[escapes] = n;
+            shift[escapes] = (escapes == 0 ? 0 : shift[escapes - 1]) + digits + 4 - u;
+            escapes++;
+            n++;
+            i = digits + 4;
+        }
+        if (out == null)
+            return new MappedCharStream(ByteBuffer.wrap(source));
+        return new MappedCharStream(ByteBuffer.wrap(out, 0, n), ByteBuffer.wrap(source),
+                                    Arrays.copyOf(at, escapes), Arrays.copyOf(shift, escapes), new LineIndex(1, 1));
+    }
+
+    /** @return the four hex digits at source[from], or -1 if there are not four */
+    private static int hex(byte[] source, int from) {
+        if (from + 4 > source.length)
+            return -1;
+        int value = 0;
+        for (int i = from; i < from + 4; i++) {
+            int digit = Character.digit((char) source[i], 16);
+            if (digit < 0)
+                return -1;
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    /** Read a character. */
+    public char readChar() throws IOException {
+        if (pos + 1 >= limit)
+            throw new IOException();
+        return (char) (buf.get(++pos) & 0xff);
+    }
+
+    /** @return starting character for token. */
+    public char BeginToken() throws IOException {
+        if (pos + 1 >= limit) {
+            // The EOF token sits on the last character, as in JavaCharStream
+            tokenBegin = pos;
+            throw new IOException();
+        }
+        tokenBegin = ++pos;
+        return (char) (buf.get(pos) & 0xff);
+    }
+
+    /** Retreat. */
+    public void backup(int amount) {
+        pos -= amount;
+    }
+
+    /** Carry on reading at offset, as if everything before it had been read. */
+    public void seek(int offset) {
+        pos = offset - 1;
+        tokenBegin = offset;
+    }
+
+    ByteBuffer buffer() {
+        return buf;
+    }
+
+    /** @return a new stream over the same buffer, for reading on another thread */
+    MappedCharStream fork() {
+        return new MappedCharStream(buf, text, escapeAt, escapeShift, new LineIndex(1, 1));
+    }
+
+    /** @return offset of the first character of the current token */
+    public int getBeginOffset() {
+        return tokenBegin;
+    }
+
+    /** @return offset just past the last character of the current token */
+    public int getEndOffset() {
+        return pos + 1;
+    }
+
+    /** @return the number of characters in the input */
+    public int length() {
+        return limit;
+    }
+
+    /** @return the offset in text of the character at offset, with text indexed as far as it */
+    private int index(int offset) {
+        int raw = rawOffset(offset);
+        int scanned = lines.scanned();
+        if (raw >= scanned)
+            lines.scan(text, scanned, Math.min(text.limit(), Math.max(raw + 1, scanned + 65536)));
+        return raw;
+    }
+
+    /** @return the offset in text of the character at offset in buf; an escape is placed at its backslash */
+    private int rawOffset(int offset) {
+        if (escapeAt == null || offset <= escapeAt[0])
+            return offset;
+        int lo = 0, hi = escapeAt.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (escapeAt[mid] < offset)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return offset + escapeShift[lo];
+    }
+
+    @Deprecated
+    public int getColumn() {
+        return getEndColumn();
+    }
+
+    @Deprecated
+    public int getLine() {
+        return getEndLine();
+    }
+
+    /** Get end column. */
+    public int getEndColumn() {
+        return lines.column(index(pos));
+    }
+
+    /** Get end line. */
+    public int getEndLine() {
+        return lines.line(index(pos));
+    }
+
+    /** @return column of token start */
+    public int getBeginColumn() {
+        return lines.column(index(tokenBegin));
+    }
+
+    /** @return line number of token start */
+    public int getBeginLine() {
+        return lines.line(index(tokenBegin));
+    }
+
+    /** @return line number of the character at offset */
+    public int lineAt(int offset) {
+        return lines.line(index(offset));
+    }
+
+    /** @return column number of the character at offset */
+    public int columnAt(int offset) {
+        return lines.column(index(offset));
+    }
+
+    /** @return token image as String */
+    public String GetImage() {
+        return image(tokenBegin, pos + 1 - tokenBegin);
+    }
+
+    /** @return the text of the given region of the input */
+    public String image(int offset, int length) {
+        if (buf.hasArray())
+            return new String(buf.array(), buf.arrayOffset() + offset, length, StandardCharsets.ISO_8859_1);
+        if (length > scratch.length)
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        buf.get(offset, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /** @return suffix */
+    public char[] GetSuffix(int len) {
+        char[] ret = new char[len];
+        for (int i = 0, from = pos + 1 - len; i < len; i++)
+            ret[i] = (char) (buf.get(from + i) & 0xff);
+        return ret;
+    }
+
+    /** Nothing to release; the mapping goes away with the buffer. */
+    public void Done() {
+    }
+}
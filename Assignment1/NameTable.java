@@ -0,0 +1,97 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Interns identifiers as small dense ints, so that later passes can index
+ * arrays by identifier instead of hashing strings.
+ *
+ * Names are looked up straight from the bytes of the source, without
+ * making a String, in an open-addressing table with linear probing. Each
+ * distinct name is copied once into a shared byte pool, so ids stay valid
+ * whatever happens to the source afterwards. CAL is not case sensitive, so
+ * ASCII letters are folded to lower case when names are hashed, compared
+ * and pooled: Count and count get the same id, and its name is "count".
+ */
+final class NameTable {
+
+    /** Slots hold id + 1, or 0 when empty. */
+    private int[] slots = new int[256];
+    private int[] hashes = new int[64];
+    private int[] starts = new int[65];
+    private byte[] pool = new byte[1024];
+    private int size = 0;
+
+    /** @return the id of the name in the length bytes of buf at offset, adding it if new */
+    int intern(ByteBuffer buf, int offset, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++)
+            h = 31 * h + lower(buf.get(offset + i));
+        // Names like v1, v2, v3 hash to neighbours: spread them out so
+        // that they do not pile up in one run of slots
+        h *= 0x9e3779b9;
+        h ^= h >>> 16;
+        int mask = slots.length - 1;
+        for (int s = h & mask;; s = (s + 1) & mask) {
+            int id = slots[s] - 1;
+            if (id < 0)
+                return add(buf, offset, length, h, s);
+            if (hashes[id] == h && equals(id, buf, offset, length))
+                return id;
+        }
+    }
+
+    private boolean equals(int id, ByteBuffer buf, int offset, int length) {
+        int start = starts[id];
+        if (starts[id + 1] - start != length)
+            return false;
+        for (int i = 0; i < length; i++)
+            if (pool[start + i] != lower(buf.get(offset + i)))
+                return false;
+        return true;
+    }
+
+    private int add(ByteBuffer buf, int offset, int length, int h, int slot) {
+        int id = size++;
+        if (id == hashes.length) {
+            hashes = Arrays.copyOf(hashes, id * 2);
+            starts = Arrays.copyOf(starts, id * 2 + 1);
+        }
+        int start = starts[id];
+        if (start + length > pool.length)
+            pool = Arrays.copyOf(pool, Math.max(start + length, pool.length * 2));
+        for (int i = 0; i < length; i++)
+            pool[start + i] = lower(buf.get(offset + i));
+        starts[id + 1] = start + length;
+        hashes[id] = h;
+        slots[slot] = id + 1;
+        // Keep the table at most half full
+        if (size * 2 > slots.length)
+            rehash();
+        return id;
+    }
+
+    private static byte lower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int s = hashes[id] & mask;
+            while (slots[s] != 0)
+                s = (s + 1) & mask;
+            slots[s] = id + 1;
+        }
+    }
+
+    /** @return the number of distinct names */
+    int size() {
+        return size;
+    }
+
+    /** @return the name with the given id */
+    String name(int id) {
+        return new String(pool, starts[id], starts[id + 1] - starts[id], java.nio.charset.StandardCharsets.ISO_8859_1);
+    }
+}
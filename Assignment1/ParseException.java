@@ -111,7 +111,7 @@ public class ParseException extends Exception {
       }
       retval += " " + tokenImage[tok.kind];
       retval += " \"";
-      retval += add_escapes(tok.image);
+      retval += add_escapes(tok.image());
       retval += " \"";
       tok = tok.next;
     }
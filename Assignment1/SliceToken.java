@@ -0,0 +1,40 @@
+/**
+ * A token whose image stays in the source buffer until it is asked for.
+ *
+ * The image field is null until image() is first called, at which point
+ * the text is copied out of the MappedCharStream the token came from.
+ * Until then the token keeps that stream, and so its buffer, reachable.
+ */
+public class SliceToken extends Token {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Offset of the first character of the token in the source. */
+    public final int offset;
+    /** Number of characters in the token. */
+    public final int length;
+
+    private transient MappedCharStream source;
+
+    /** Constructor. */
+    public SliceToken(int kind, MappedCharStream source, int offset, int length) {
+        super(kind);
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /** @return the image, copying it out of the source on first use */
+    public String image() {
+        if (image == null) {
+            image = source.image(offset, length);
+            source = null;
+        }
+        return image;
+    }
+
+    private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
+        image();
+        out.defaultWriteObject();
+    }
+}
@@ -92,12 +92,22 @@ public class Token implements java.io.Serializable {
     this.image = image;
   }
 
+  /**
+   * Returns the image. Tokens that are created with a null image and
+   * fill it in on demand (see SliceToken) override this, so code that may
+   * meet such tokens should call image() rather than read the field.
+   */
+  public String image()
+  {
+    return image;
+  }
+
   /**
    * Returns the image.
    */
   public String toString()
   {
-    return image;
+    return image();
   }
 
   /**
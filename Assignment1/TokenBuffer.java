@@ -0,0 +1,245 @@
+/**
+ * The tokens of one source file held as parallel int arrays instead of a
+ * chain of Token objects.
+ *
+ * Each token costs three ints: its kind, the offset of its first character
+ * and its length. Images and line/column positions are worked out from the
+ * MappedCharStream the tokens came from, and only when somebody asks. The
+ * last token is always EOF. A buffer can be refilled for file after file
+ * and keeps its arrays between them.
+ */
+public class TokenBuffer {
+
+    private int[] kinds;
+    private int[] offsets;
+    private int[] lengths;
+    private int size = 0;
+    private MappedCharStream source;
+
+    /** Constructor. */
+    public TokenBuffer() {
+        this(1024);
+    }
+
+    /** Constructor. */
+    public TokenBuffer(int capacity) {
+        kinds = new int[capacity];
+        offsets = new int[capacity];
+        lengths = new int[capacity];
+    }
+
+    /** Replace the contents with all the tokens of stream, up to and including EOF. */
+    public void fill(MappedCharStream stream) {
+        clear(stream);
+        CALTableTokenManager tm = new CALTableTokenManager(stream);
+        int kind;
+        do {
+            kind = tm.nextKind();
+            add(kind, stream);
+        } while (kind != CALParserConstants.EOF);
+    }
+
+    /**
+     * Replace the contents with all the tokens of stream, lexing pieces of
+     * it on up to the given number of threads. The tokens are exactly those
+     * fill(stream) would produce.
+     */
+    public void fill(MappedCharStream stream, int threads) {
+        if (threads <= 1 || stream.length() < 2 * ChunkedLexer.MIN_CHUNK) {
+            fill(stream);
+            return;
+        }
+        new ChunkedLexer(stream, threads, ChunkedLexer.MIN_CHUNK).lex(this);
+    }
+
+    void clear(MappedCharStream stream) {
+        size = 0;
+        source = stream;
+    }
+
+    /** Append tokens from .. to - 1 of other. */
+    void append(TokenBuffer other, int from, int to) {
+        append(other, from, to, 0);
+    }
+
+    /** Append tokens from .. to - 1 of other, moving their offsets by shift. */
+    void append(TokenBuffer other, int from, int to, int shift) {
+        int count = to - from;
+        ensureCapacity(size + count);
+        System.arraycopy(other.kinds, from, kinds, size, count);
+        System.arraycopy(other.offsets, from, offsets, size, count);
+        System.arraycopy(other.lengths, from, lengths, size, count);
+        if (shift != 0)
+            for (int i = size; i < size + count; i++)
+                offsets[i] += shift;
+        size += count;
+    }
+
+    /**
+     * Put all the tokens of with in place of tokens from .. to - 1, move
+     * the offsets of the tokens after them by shift, and take images from
+     * source from now on.
+     */
+    void replace(int from, int to, TokenBuffer with, int shift, MappedCharStream source) {
+        int count = with.size;
+        int newSize = size - (to - from) + count;
+        ensureCapacity(newSize);
+        System.arraycopy(kinds, to, kinds, from + count, size - to);
+        System.arraycopy(offsets, to, offsets, from + count, size - to);
+        System.arraycopy(lengths, to, lengths, from + count, size - to);
+        System.arraycopy(with.kinds, 0, kinds, from, count);
+        System.arraycopy(with.offsets, 0, offsets, from, count);
+        System.arraycopy(with.lengths, 0, lengths, from, count);
+        if (shift != 0)
+            for (int i = from + count; i < newSize; i++)
+                offsets[i] += shift;
+        size = newSize;
+        this.source = source;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > kinds.length) {
+            capacity = Math.max(capacity, kinds.length * 2);
+            kinds = java.util.Arrays.copyOf(kinds, capacity);
+            offsets = java.util.Arrays.copyOf(offsets, capacity);
+            lengths = java.util.Arrays.copyOf(lengths, capacity);
+        }
+    }
+
+    /** Append the token the stream has just scanned. */
+    void add(int kind, MappedCharStream stream) {
+        int offset = stream.getBeginOffset();
+        add(kind, offset, kind == CALParserConstants.EOF ? 0 : stream.getEndOffset() - offset);
+    }
+
+    private void add(int kind, int offset, int length) {
+        if (size == kinds.length)
+            ensureCapacity(size + 1);
+        kinds[size] = kind;
+        offsets[size] = offset;
+        lengths[size] = length;
+        size++;
+    }
+
+    /** @return the most bytes write() can take */
+    int serializedSize() {
+        return 5 + 11 * size;
+    }
+
+    /**
+     * Write the tokens to out, for read() to restore: a byte for the kind,
+     * then the gap since the end of the token before and the length, each
+     * in as few bytes as it fits.
+     */
+    void write(java.nio.ByteBuffer out) {
+        putVarint(out, size);
+        int end = 0;
+        for (int i = 0; i < size; i++) {
+            out.put((byte) kinds[i]);
+            putVarint(out, offsets[i] - end);
+            putVarint(out, lengths[i]);
+            end = offsets[i] + lengths[i];
+        }
+    }
+
+    /**
+     * @return the tokens write() wrote to in, taking images from source
+     * @throws IllegalArgumentException if in does not hold tokens of source
+     */
+    static TokenBuffer read(java.nio.ByteBuffer in, MappedCharStream source) {
+        int size = getVarint(in);
+        // Each token takes at least three bytes
+        if (size < 0 || size > in.remaining() / 3)
+            throw new IllegalArgumentException("bad token count " + size);
+        TokenBuffer tokens = new TokenBuffer(Math.max(size, 1));
+        int end = 0;
+        for (int i = 0; i < size; i++) {
+            tokens.kinds[i] = in.get();
+            tokens.offsets[i] = end + getVarint(in);
+            tokens.lengths[i] = getVarint(in);
+            end = tokens.offsets[i] + tokens.lengths[i];
+            if (tokens.offsets[i] < 0 || end < tokens.offsets[i] || end > source.buffer().limit())
+                throw new IllegalArgumentException("token " + i + " lies outside the source");
+        }
+        tokens.size = size;
+        tokens.source = source;
+        return tokens;
+    }
+
+    /** Write a non-negative int in seven bit groups, low group first. */
+    static void putVarint(java.nio.ByteBuffer out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.put((byte) (value | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /** @return an int written by putVarint() */
+    static int getVarint(java.nio.ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0)
+                return value;
+        }
+    }
+
+    /** @return the stream the tokens were read from */
+    MappedCharStream source() {
+        return source;
+    }
+
+    /** @return the number of tokens, counting EOF */
+    public int size() {
+        return size;
+    }
+
+    /** @return the kinds array, valid from 0 to size() - 1 */
+    public int[] kinds() {
+        return kinds;
+    }
+
+    /** @return the kind of token i */
+    public int kind(int i) {
+        return kinds[i];
+    }
+
+    /** @return the offset of the first character of token i */
+    public int offset(int i) {
+        return offsets[i];
+    }
+
+    /** @return the number of characters in token i */
+    public int length(int i) {
+        return lengths[i];
+    }
+
+    /** @return the text of token i */
+    public String image(int i) {
+        String literal = CALParserTokenManager.jjstrLiteralImages[kinds[i]];
+        return literal != null ? literal : source.image(offsets[i], lengths[i]);
+    }
+
+    /** @return the line of the first character of token i */
+    public int line(int i) {
+        return source.lineAt(offsets[i]);
+    }
+
+    /** @return the column of the first character of token i */
+    public int column(int i) {
+        return source.columnAt(offsets[i]);
+    }
+
+    /** @return a Token for token i, positioned as the token manager would */
+    public Token token(int i) {
+        Token t = Token.newToken(kinds[i], image(i));
+        int end = offsets[i] + Math.max(lengths[i], 1) - 1;
+        t.beginLine = line(i);
+        t.beginColumn = column(i);
+        t.endLine = source.lineAt(end);
+        t.endColumn = source.columnAt(end);
+        return t;
+    }
+}